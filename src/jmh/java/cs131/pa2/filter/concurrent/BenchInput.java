@@ -0,0 +1,128 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generates the input the benchmarks run on. Every line starts with "line", one
+ * in ten is an "ERROR" line, and the number after that repeats every
+ * {@link #DISTINCT} lines so uniq has duplicates to drop. The rest of the line
+ * is random lowercase letters up to the requested length. The same arguments
+ * always give the same lines.
+ *
+ * @author cs131a
+ *
+ */
+final class BenchInput {
+
+	/**
+	 * query that matches one line in ten
+	 */
+	static final String RARE = "ERROR";
+
+	/**
+	 * query that matches every line
+	 */
+	static final String EVERY = "line";
+
+	/**
+	 * number of distinct line prefixes
+	 */
+	static final int DISTINCT = 5000;
+
+	private BenchInput() {
+	}
+
+	/**
+	 * @param count  number of lines
+	 * @param length length of each line, at least long enough for its prefix
+	 * @return the generated lines
+	 */
+	static List<String> lines(int count, int length) {
+		Random random = new Random(count * 31L + length);
+		List<String> lines = new ArrayList<String>(count);
+		StringBuilder sb = new StringBuilder(length);
+		for (int i = 0; i < count; i++) {
+			sb.setLength(0);
+			sb.append(i % 10 == 0 ? "line ERROR " : "line ").append(i % DISTINCT).append(' ');
+			while (sb.length() < length) {
+				sb.append((char) ('a' + random.nextInt(26)));
+			}
+			lines.add(sb.toString());
+		}
+		return lines;
+	}
+
+	/**
+	 * @param lines lines to measure
+	 * @return number of bytes the lines take up in a file, terminators included
+	 */
+	static long bytes(List<String> lines) {
+		long bytes = 0;
+		for (String line : lines) {
+			bytes += line.getBytes(StandardCharsets.UTF_8).length + 1;
+		}
+		return bytes;
+	}
+
+	/**
+	 * Writes lines to a file, one per line.
+	 *
+	 * @param lines the lines
+	 * @param file  the file to write
+	 * @throws IOException if the file cannot be written
+	 */
+	static void write(List<String> lines, File file) throws IOException {
+		Files.write(file.toPath(), lines, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Fills a pipe with lines and ends it, the way {@link CatFilter} would: as
+	 * bytes if {@link CatFilter#BYTE_LINES}, else as Strings. The pipe is unbounded
+	 * so this never waits for a consumer.
+	 *
+	 * @param lines the lines
+	 * @return the filled pipe
+	 * @throws InterruptedException never, the pipe is unbounded
+	 */
+	static Pipe filled(List<String> lines) throws InterruptedException {
+		Pipe pipe = unbounded();
+		for (String line : lines) {
+			if (CatFilter.BYTE_LINES) {
+				byte[] bytes = line.getBytes(StandardCharsets.UTF_8);
+				pipe.put(bytes, 0, bytes.length);
+			} else {
+				pipe.put(line);
+			}
+		}
+		pipe.close();
+		return pipe;
+	}
+
+	/**
+	 * @return a pipe large enough that its producer never waits
+	 */
+	static Pipe unbounded() {
+		return new Pipe(PipeCapacity.lines(Integer.MAX_VALUE));
+	}
+
+	/**
+	 * Deletes a directory and the files in it.
+	 *
+	 * @param dir the directory
+	 */
+	static void delete(File dir) {
+		File[] files = dir.listFiles();
+		if (files != null) {
+			for (File file : files) {
+				file.delete();
+			}
+		}
+		dir.delete();
+	}
+}
@@ -0,0 +1,169 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs each filter on its own, on the benchmark thread. The input pipe is
+ * filled before each invocation and the output pipe is never drained, so only
+ * the filter's own work is timed. The gc profiler's allocation figures do
+ * include filling the input pipe, so compare them between runs rather than
+ * reading them as the filter's alone.
+ *
+ * The fork turns off the file cache, so cat reads the file every time. Replaying
+ * the file from the cache is measured separately by catCached.
+ *
+ * @author cs131a
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgs = { "-Dpa2.cat.cache=0" })
+@State(Scope.Thread)
+public class FilterBenchmarks {
+
+	/**
+	 * number of lines of input
+	 */
+	@Param({ "100000" })
+	public int lines;
+
+	/**
+	 * length of each line of input
+	 */
+	@Param({ "16", "128" })
+	public int lineLength;
+
+	/**
+	 * the input as lines
+	 */
+	private List<String> input;
+
+	/**
+	 * size of the input in bytes
+	 */
+	private long inputBytes;
+
+	/**
+	 * directory holding the input file and redirect output
+	 */
+	private File dir;
+
+	/**
+	 * input pipe for the next invocation, filled before each one
+	 */
+	private Pipe in;
+
+	/**
+	 * Generates the input and writes it to a file for cat.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Setup(Level.Trial)
+	public void createInput() throws IOException {
+		input = BenchInput.lines(lines, lineLength);
+		inputBytes = BenchInput.bytes(input);
+		dir = Files.createTempDirectory("pa2-bench").toFile();
+		BenchInput.write(input, new File(dir, "in.txt"));
+		ConcurrentREPL.currentWorkingDirectory = dir.getPath();
+	}
+
+	/**
+	 * Fills a fresh input pipe, which the filter will drain.
+	 *
+	 * @throws InterruptedException never
+	 */
+	@Setup(Level.Invocation)
+	public void fillInput() throws InterruptedException {
+		in = BenchInput.filled(input);
+	}
+
+	/**
+	 * Removes the input file and redirect output.
+	 */
+	@TearDown(Level.Trial)
+	public void deleteInput() {
+		BenchInput.delete(dir);
+	}
+
+	/**
+	 * Runs a filter over the prepared input to completion.
+	 *
+	 * @param filter  the filter
+	 * @param counter records the input processed
+	 * @return the output pipe, so its contents are not optimised away
+	 */
+	private Pipe run(ConcurrentFilter filter, Throughput counter) {
+		filter.input = in;
+		filter.output = BenchInput.unbounded();
+		filter.run();
+		counter.add(lines, inputBytes);
+		return filter.output;
+	}
+
+	@Benchmark
+	public Pipe grep(Throughput counter) {
+		return run(new GrepFilter("grep " + BenchInput.RARE), counter);
+	}
+
+	@Benchmark
+	public Pipe uniq(Throughput counter) {
+		return run(new UniqFilter(), counter);
+	}
+
+	@Benchmark
+	public Pipe wc(Throughput counter) {
+		return run(new WordCountFilter(), counter);
+	}
+
+	@Benchmark
+	public Pipe tail(Throughput counter) {
+		return run(new TailFilter(), counter);
+	}
+
+	@Benchmark
+	public Pipe cat(Throughput counter) {
+		CatFilter cat = new CatFilter("cat in.txt");
+		cat.output = BenchInput.unbounded();
+		cat.run();
+		counter.add(lines, inputBytes);
+		return cat.output;
+	}
+
+	/**
+	 * cat with the file cache on, so every invocation after the first replays the
+	 * cached lines instead of reading the file
+	 */
+	@Benchmark
+	@Fork(value = 1, jvmArgs = { "-Dpa2.cat.cache=64MB" })
+	public Pipe catCached(Throughput counter) {
+		return cat(counter);
+	}
+
+	@Benchmark
+	public void redirect(Throughput counter) {
+		RedirectFilter redirect = new RedirectFilter("> out.txt");
+		redirect.input = in;
+		redirect.run();
+		counter.add(lines, inputBytes);
+	}
+}
@@ -0,0 +1,170 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the ways grep can search a line: {@link String#contains}, which it
+ * used to call, against {@link LiteralMatcher} on Strings, and the first-byte
+ * probe of {@link LiteralMatcher#indexOf(byte[], int, int, byte[])} on its own
+ * against a prepared LiteralMatcher on UTF-8 bytes. The lines are the
+ * fizz-buzz and ASCII files the tests generate, and the fizz-buzz file joined
+ * 100 lines at a time into long lines, where skipping pays off the most.
+ *
+ * @author cs131a
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class GrepBenchmarks {
+
+	/**
+	 * fizzbuzz (fizz-buzz-1500000.txt), ascii (ascii.txt) or long (fizz-buzz
+	 * lines joined 100 at a time)
+	 */
+	@Param({ "fizzbuzz", "ascii", "long" })
+	public String fixture;
+
+	/**
+	 * the query, from a single character to ones longer than any fizz-buzz line
+	 */
+	@Param({ "z", "Fizz", "FizzBuzz", "1499999 FizzBuzz", "Buzz Fizz 1499998 1499999 FizzBuzz 1500001" })
+	public String query;
+
+	/**
+	 * the lines as Strings
+	 */
+	private String[] lines;
+
+	/**
+	 * the lines as UTF-8 bytes, one after the other
+	 */
+	private byte[] data;
+
+	/**
+	 * where each line starts in data, and one more entry for the end
+	 */
+	private int[] starts;
+
+	/**
+	 * the query as UTF-8 bytes
+	 */
+	private byte[] queryBytes;
+
+	/**
+	 * the prepared query
+	 */
+	private LiteralMatcher matcher;
+
+	/**
+	 * number of bytes in the lines
+	 */
+	private long bytes;
+
+	@Setup(Level.Trial)
+	public void createLines() {
+		List<String> list = new ArrayList<String>();
+		if (fixture.equals("ascii")) {
+			for (int i = 32; i <= 126; i++) {
+				if (i != 62 && i != 124) {
+					list.add(String.valueOf((char) i));
+				}
+			}
+		} else {
+			int join = fixture.equals("long") ? 100 : 1;
+			StringBuilder sb = new StringBuilder();
+			for (int i = 0; i <= 1500000; i++) {
+				if (sb.length() > 0) {
+					sb.append(' ');
+				}
+				sb.append(i % 15 == 0 ? "FizzBuzz" : i % 3 == 0 ? "Fizz" : i % 5 == 0 ? "Buzz" : String.valueOf(i));
+				if ((i + 1) % join == 0) {
+					list.add(sb.toString());
+					sb.setLength(0);
+				}
+			}
+			if (sb.length() > 0) {
+				list.add(sb.toString());
+			}
+		}
+		lines = list.toArray(new String[0]);
+		starts = new int[lines.length + 1];
+		StringBuilder all = new StringBuilder();
+		for (int i = 0; i < lines.length; i++) {
+			starts[i] = all.length();
+			all.append(lines[i]);
+		}
+		starts[lines.length] = all.length();
+		data = all.toString().getBytes(StandardCharsets.UTF_8);
+		bytes = data.length;
+		queryBytes = query.getBytes(StandardCharsets.UTF_8);
+		matcher = new LiteralMatcher(query);
+	}
+
+	@Benchmark
+	public int stringContains(Throughput counter) {
+		int found = 0;
+		for (String line : lines) {
+			if (line.contains(query)) {
+				found++;
+			}
+		}
+		counter.add(lines.length, bytes);
+		return found;
+	}
+
+	@Benchmark
+	public int matcherStrings(Throughput counter) {
+		int found = 0;
+		for (String line : lines) {
+			if (matcher.matches(line)) {
+				found++;
+			}
+		}
+		counter.add(lines.length, bytes);
+		return found;
+	}
+
+	@Benchmark
+	public int firstByteProbe(Throughput counter) {
+		int found = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if (LiteralMatcher.indexOf(data, starts[i], starts[i + 1] - starts[i], queryBytes) >= 0) {
+				found++;
+			}
+		}
+		counter.add(lines.length, bytes);
+		return found;
+	}
+
+	@Benchmark
+	public int matcherBytes(Throughput counter) {
+		int found = 0;
+		for (int i = 0; i < lines.length; i++) {
+			if (matcher.matches(data, starts[i], starts[i + 1] - starts[i])) {
+				found++;
+			}
+		}
+		counter.add(lines.length, bytes);
+		return found;
+	}
+}
@@ -0,0 +1,124 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Compares reading the fizz-buzz files the tests generate with
+ * {@link Scanner#nextLine()}, which cat used to do, against {@link LineReader}
+ * producing Strings and producing byte slices.
+ *
+ * @author cs131a
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineReaderBenchmarks {
+
+	/**
+	 * the fizz-buzz file goes up to this number, as in fizz-buzz-10000.txt and
+	 * fizz-buzz-1500000.txt
+	 */
+	@Param({ "10000", "1500000" })
+	public int max;
+
+	/**
+	 * the generated file
+	 */
+	private File file;
+
+	/**
+	 * number of lines and bytes in the file
+	 */
+	private long lines, bytes;
+
+	/**
+	 * Writes the fizz-buzz file the same way AllConcurrentTests does.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Setup(Level.Trial)
+	public void createFile() throws IOException {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i <= max; i++) {
+			if (i % 3 == 0 && i % 5 == 0) {
+				sb.append("FizzBuzz\n");
+			} else if (i % 3 == 0) {
+				sb.append("Fizz\n");
+			} else if (i % 5 == 0) {
+				sb.append("Buzz\n");
+			} else {
+				sb.append(i).append('\n');
+			}
+		}
+		file = File.createTempFile("fizz-buzz-" + max, ".txt");
+		byte[] content = sb.toString().getBytes(StandardCharsets.UTF_8);
+		Files.write(file.toPath(), content);
+		lines = max + 1;
+		bytes = content.length;
+	}
+
+	/**
+	 * Removes the file.
+	 */
+	@TearDown(Level.Trial)
+	public void deleteFile() {
+		file.delete();
+	}
+
+	@Benchmark
+	public void scanner(Throughput counter, Blackhole bh) throws IOException {
+		try (Scanner s = new Scanner(file, StandardCharsets.UTF_8)) {
+			while (s.hasNextLine()) {
+				bh.consume(s.nextLine());
+			}
+		}
+		counter.add(lines, bytes);
+	}
+
+	@Benchmark
+	public void lineReaderStrings(Throughput counter, Blackhole bh) throws IOException {
+		try (LineReader reader = new LineReader(FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				bh.consume(line);
+			}
+		}
+		counter.add(lines, bytes);
+	}
+
+	@Benchmark
+	public void lineReaderBytes(Throughput counter, Blackhole bh) throws IOException {
+		try (LineReader reader = new LineReader(FileChannel.open(file.toPath(), StandardOpenOption.READ))) {
+			while (reader.next()) {
+				bh.consume(reader.length());
+			}
+		}
+		counter.add(lines, bytes);
+	}
+}
@@ -0,0 +1,120 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Runs whole commands the way the REPL does: built by
+ * {@link ConcurrentCommandBuilder} and started on a {@link PipelineExecutor}.
+ * Each command reads a file with cat, passes it through a number of grep stages
+ * that keep every line, and redirects it to a file, so the stage count measures
+ * the cost of each extra stage. The fork turns off everything that would take
+ * stages away or skip reading the file: the zero-copy redirect, pushing grep
+ * down into cat, fusion and the file cache, so every grep is a thread of its
+ * own and every run reads the file. Passing -jvmArgs replaces these settings,
+ * so a run with, say, -jvmArgs -Dpa2.fusion=true measures one of them again.
+ *
+ * @author cs131a
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgs = { "-Dpa2.zeroCopy=false", "-Dpa2.grep.pushDown=false", "-Dpa2.fusion=false",
+		"-Dpa2.cat.cache=0" })
+@State(Scope.Thread)
+public class PipelineBenchmarks {
+
+	/**
+	 * number of lines in the file
+	 */
+	@Param({ "10000", "1000000" })
+	public int lines;
+
+	/**
+	 * length of each line of the file
+	 */
+	@Param({ "16", "128" })
+	public int lineLength;
+
+	/**
+	 * number of grep stages between cat and the redirect
+	 */
+	@Param({ "0", "1", "4" })
+	public int stages;
+
+	/**
+	 * size of the file in bytes
+	 */
+	private long inputBytes;
+
+	/**
+	 * directory holding the file and the redirect output
+	 */
+	private File dir;
+
+	/**
+	 * the command that is run
+	 */
+	private String command;
+
+	/**
+	 * runs the command's filters
+	 */
+	private PipelineExecutor executor;
+
+	/**
+	 * Writes the file and builds the command.
+	 *
+	 * @throws IOException if the file cannot be written
+	 */
+	@Setup(Level.Trial)
+	public void createInput() throws IOException {
+		List<String> input = BenchInput.lines(lines, lineLength);
+		inputBytes = BenchInput.bytes(input);
+		dir = Files.createTempDirectory("pa2-bench").toFile();
+		BenchInput.write(input, new File(dir, "in.txt"));
+		ConcurrentREPL.currentWorkingDirectory = dir.getPath();
+
+		StringBuilder sb = new StringBuilder("cat in.txt");
+		for (int i = 0; i < stages; i++) {
+			sb.append(" | grep ").append(BenchInput.EVERY);
+		}
+		command = sb.append(" > out.txt").toString();
+		executor = new PipelineExecutor(ExecutionMode.DEFAULT);
+	}
+
+	/**
+	 * Stops the executor and removes the files.
+	 */
+	@TearDown(Level.Trial)
+	public void deleteInput() {
+		executor.shutdown();
+		BenchInput.delete(dir);
+	}
+
+	@Benchmark
+	public void pipeline(Throughput counter) throws InterruptedException {
+		List<ConcurrentFilter> filters = ConcurrentCommandBuilder.createFiltersFromCommand(command);
+		executor.start(filters, command).join();
+		counter.add(lines, inputBytes);
+	}
+}
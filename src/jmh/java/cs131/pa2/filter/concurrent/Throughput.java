@@ -0,0 +1,57 @@
+package cs131.pa2.filter.concurrent;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Counts the lines and bytes a benchmark pushed through, which JMH reports as
+ * rates next to the operation rate, so every result reads as lines/s, bytes/s
+ * and MB/s.
+ *
+ * @author cs131a
+ *
+ */
+@State(Scope.Thread)
+@AuxCounters(AuxCounters.Type.OPERATIONS)
+public class Throughput {
+
+	/**
+	 * lines processed in this iteration
+	 */
+	public long lines;
+
+	/**
+	 * bytes processed in this iteration
+	 */
+	public long bytes;
+
+	/**
+	 * megabytes processed in this iteration
+	 */
+	public double megabytes;
+
+	/**
+	 * Clears the counters before each iteration.
+	 */
+	@Setup(Level.Iteration)
+	public void reset() {
+		lines = 0;
+		bytes = 0;
+		megabytes = 0;
+	}
+
+	/**
+	 * Records one operation's worth of input.
+	 *
+	 * @param lineCount number of lines processed
+	 * @param byteCount number of bytes processed
+	 */
+	void add(long lineCount, long byteCount) {
+		lines += lineCount;
+		bytes += byteCount;
+		megabytes += byteCount / (1024.0 * 1024.0);
+	}
+}
@@ -0,0 +1,187 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+/**
+ * Finds whether a line contains any of a set of strings, for grep with several
+ * patterns. The strings are built once into an Aho-Corasick automaton over
+ * their UTF-8 bytes: a trie of the strings where every state also knows where
+ * to go on a byte that does not continue it, namely to the state for the
+ * longest suffix of what has been read that is still the start of some string.
+ * A line is then read one byte at a time with a single table lookup per byte,
+ * never going back, however many strings there are.
+ *
+ * The transitions are one int array with a row per state and a column per byte
+ * class. Bytes that occur in no string share one class, so a row is only as
+ * wide as the number of distinct bytes in the strings instead of 256. An entry
+ * is the offset of the next state's row, complemented with ~ if some string
+ * ends in that state, so reading a byte is one lookup in each of two arrays
+ * and a sign test.
+ *
+ * @author cs131a
+ *
+ */
+final class AhoCorasick implements LineMatcher {
+
+	/**
+	 * the column of each byte value, 0 for bytes that occur in no string
+	 */
+	private final int[] byteClass = new int[256];
+
+	/**
+	 * number of columns
+	 */
+	private final int width;
+
+	/**
+	 * row offset of the next state for each state and column, as ~offset if a
+	 * string ends in the next state
+	 */
+	private final int[] delta;
+
+	/**
+	 * true if one of the strings is empty, so every line matches
+	 */
+	private final boolean matchesEmpty;
+
+	/**
+	 * Builds the automaton for a set of strings.
+	 *
+	 * @param patterns the strings to find
+	 */
+	AhoCorasick(List<String> patterns) {
+		byte[][] keys = new byte[patterns.size()][];
+		int classes = 1;
+		int maxStates = 1;
+		for (int i = 0; i < keys.length; i++) {
+			keys[i] = patterns.get(i).getBytes(StandardCharsets.UTF_8);
+			maxStates += keys[i].length;
+			for (byte b : keys[i]) {
+				if (byteClass[b & 0xff] == 0) {
+					byteClass[b & 0xff] = classes++;
+				}
+			}
+		}
+		width = classes;
+
+		// the trie, with states numbered from 0 for the root and 0 standing for no
+		// child since the root is never anyone's child
+		int[] next = new int[maxStates * width];
+		boolean[] terminal = new boolean[maxStates];
+		int states = 1;
+		for (byte[] key : keys) {
+			int s = 0;
+			for (byte b : key) {
+				int c = byteClass[b & 0xff];
+				if (next[s * width + c] == 0) {
+					next[s * width + c] = states++;
+				}
+				s = next[s * width + c];
+			}
+			terminal[s] = true;
+		}
+
+		// breadth first, so a state's fallback is always finished before the state:
+		// a missing child becomes the fallback's child, and a state is terminal if its
+		// fallback is, since a string ends there too
+		int[] fail = new int[states];
+		int[] queue = new int[states];
+		int head = 0, tail = 0;
+		queue[tail++] = 0;
+		while (head < tail) {
+			int r = queue[head++];
+			for (int c = 0; c < width; c++) {
+				int u = next[r * width + c];
+				int fallback = r == 0 ? 0 : next[fail[r] * width + c];
+				if (u != 0) {
+					fail[u] = fallback;
+					terminal[u] |= terminal[fallback];
+					queue[tail++] = u;
+				} else {
+					next[r * width + c] = fallback;
+				}
+			}
+		}
+
+		delta = new int[states * width];
+		for (int i = 0; i < delta.length; i++) {
+			int target = next[i];
+			delta[i] = terminal[target] ? ~(target * width) : target * width;
+		}
+		matchesEmpty = terminal[0];
+	}
+
+	/**
+	 * @param line the line to search
+	 * @return true if any of the strings occurs in the line
+	 */
+	@Override
+	public boolean matches(String line) {
+		if (matchesEmpty) {
+			return true;
+		}
+		// the chars are encoded as UTF-8 on the fly, so the String is read in place
+		int s = 0;
+		int n = line.length();
+		for (int i = 0; i < n; i++) {
+			char ch = line.charAt(i);
+			if (ch < 0x80) {
+				s = delta[s + byteClass[ch]];
+			} else if (ch < 0x800) {
+				s = delta[s + byteClass[0xc0 | ch >> 6]];
+				if (s >= 0) {
+					s = delta[s + byteClass[0x80 | ch & 0x3f]];
+				}
+			} else if (Character.isHighSurrogate(ch) && i + 1 < n && Character.isLowSurrogate(line.charAt(i + 1))) {
+				int cp = Character.toCodePoint(ch, line.charAt(++i));
+				s = delta[s + byteClass[0xf0 | cp >> 18]];
+				if (s >= 0) {
+					s = delta[s + byteClass[0x80 | cp >> 12 & 0x3f]];
+				}
+				if (s >= 0) {
+					s = delta[s + byteClass[0x80 | cp >> 6 & 0x3f]];
+				}
+				if (s >= 0) {
+					s = delta[s + byteClass[0x80 | cp & 0x3f]];
+				}
+			} else if (Character.isSurrogate(ch)) {
+				// an unpaired surrogate, which String.getBytes encodes as ?
+				s = delta[s + byteClass['?']];
+			} else {
+				s = delta[s + byteClass[0xe0 | ch >> 12]];
+				if (s >= 0) {
+					s = delta[s + byteClass[0x80 | ch >> 6 & 0x3f]];
+				}
+				if (s >= 0) {
+					s = delta[s + byteClass[0x80 | ch & 0x3f]];
+				}
+			}
+			if (s < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @param data buffer holding the line
+	 * @param off  offset of the line in data
+	 * @param len  length of the line in bytes
+	 * @return true if any of the strings occurs in the line
+	 */
+	@Override
+	public boolean matches(byte[] data, int off, int len) {
+		if (matchesEmpty) {
+			return true;
+		}
+		int s = 0;
+		for (int i = off, end = off + len; i < end; i++) {
+			s = delta[s + byteClass[data[i] & 0xff]];
+			if (s < 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+}
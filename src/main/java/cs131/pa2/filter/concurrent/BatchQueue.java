@@ -0,0 +1,49 @@
+package cs131.pa2.filter.concurrent;
+
+/**
+ * The transport a {@link Pipe} uses to hand {@link LineBatch}es from its
+ * producer thread to its consumer thread. Every implementation may assume there
+ * is exactly one producer thread calling {@link #put(LineBatch)} and one
+ * consumer thread calling everything else.
+ *
+ * @author cs131a
+ *
+ */
+interface BatchQueue {
+
+	/**
+	 * Adds a batch, waiting for space if the transport is full. Called only by the
+	 * producer.
+	 *
+	 * @param batch the batch to add
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	void put(LineBatch batch) throws InterruptedException;
+
+	/**
+	 * Removes the oldest batch, waiting for one if the transport is empty. Called
+	 * only by the consumer.
+	 *
+	 * @return the oldest batch
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	LineBatch take() throws InterruptedException;
+
+	/**
+	 * Removes the oldest batch without waiting. Called only by the consumer.
+	 *
+	 * @return the oldest batch, or null if there is none
+	 */
+	LineBatch poll();
+
+
+	/**
+	 * @return true if there is no batch waiting
+	 */
+	boolean isEmpty();
+
+	/**
+	 * Drops every waiting batch. Called only by the consumer.
+	 */
+	void clear();
+}
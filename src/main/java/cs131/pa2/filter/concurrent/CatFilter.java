@@ -1,8 +1,31 @@
 package cs131.pa2.filter.concurrent;
 
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.util.Scanner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import cs131.pa2.filter.Filter;
 import cs131.pa2.filter.Message;
@@ -18,15 +41,43 @@ import cs131.pa2.filter.Message;
 public class CatFilter extends ConcurrentFilter {
 
 	/**
-	 * file to be read
+	 * true if lines are passed on as UTF-8 bytes instead of Strings, so stages that
+	 * can work on bytes never decode them, can be turned off with the
+	 * pa2.pipe.bytes system property
 	 */
-	private File file;
+	static final boolean BYTE_LINES = Boolean.parseBoolean(System.getProperty("pa2.pipe.bytes", "true"));
+
+	/**
+	 * files to be read, in order
+	 */
+	private List<File> files = new ArrayList<File>();
+
+	/**
+	 * the part of each file to be read, null for a file read whole
+	 */
+	private List<FileRange> ranges = new ArrayList<FileRange>();
+
+	/**
+	 * true for cat -f, which keeps reading what is appended to the last file
+	 */
+	private boolean follow;
 
 	/**
 	 * command that was used to construct this filter
 	 */
 	private String command;
 
+	/**
+	 * the filter whose test this cat runs on the lines as it reads them, null if
+	 * none
+	 */
+	private ConcurrentFilter pushedDown;
+
+	/**
+	 * how files are read when lines are passed on as bytes
+	 */
+	private ReadMode readMode = ReadMode.DEFAULT;
+
 	/**
 	 * Constructs a CatFilter given a cat command.
 	 * 
@@ -48,19 +99,118 @@ public class CatFilter extends ConcurrentFilter {
 			throw new IllegalArgumentException(Message.REQUIRES_PARAMETER.with_parameter(cmd));
 		}
 
-		// we have a space, filename will be trimmed string after space
-		String dest = cmd.substring(spaceIdx + 1).trim();
+		// we have a space, the file names will be trimmed string after space
+		String args = cmd.substring(spaceIdx + 1).trim();
 
-		// create a File with the path to the file from the current working directory
-		// since we interpret dest as a relative path
-		file = new File(ConcurrentREPL.currentWorkingDirectory + Filter.FILE_SEPARATOR + dest);
+		// -f follows the last file, unless there really is a file by that name
+		if ((args.equals("-f") || args.startsWith("-f ")) && !relativeFile(args).isFile()) {
+			follow = true;
+			args = args.substring(2).trim();
+			if (args.isEmpty()) {
+				throw new IllegalArgumentException(Message.REQUIRES_PARAMETER.with_parameter(cmd));
+			}
+		}
 
-		// if this is not a valid File, throw an IAE with the appropriate message
-		if (!file.isFile()) {
+		// if any of the files is not a valid File, throw an IAE with the appropriate
+		// message
+		if (!resolveFiles(args)) {
 			throw new IllegalArgumentException(Message.FILE_NOT_FOUND.with_parameter(cmd));
 		}
 	}
 
+	/**
+	 * Turns the arguments of a cat command into the files to read. The arguments
+	 * are file names separated by spaces, relative to the current working
+	 * directory, and a name containing *, ?, [ or { is a glob that matches the
+	 * files in its directory, in name order. A name followed by @ or # and
+	 * numbers reads part of the file, see {@link FileRange}. If the arguments as a
+	 * whole name a file, that one file is read, so names with spaces in them still
+	 * work.
+	 * 
+	 * @param args the arguments
+	 * @return true if every file exists and every glob matches something
+	 */
+	private boolean resolveFiles(String args) {
+		File whole = relativeFile(args);
+		if (whole.isFile()) {
+			add(whole, null);
+			return true;
+		}
+		if (args.isEmpty()) {
+			return false;
+		}
+		for (String arg : args.split("\\s+")) {
+			File file = relativeFile(arg);
+			if (file.isFile()) {
+				add(file, null);
+				continue;
+			}
+			FileRange range = FileRange.parse(arg, CatFilter::relativeFile);
+			if (range != null) {
+				add(range.file, range);
+			} else if (isGlob(arg)) {
+				List<File> matches = expandGlob(arg);
+				if (matches.isEmpty()) {
+					return false;
+				}
+				for (File match : matches) {
+					add(match, null);
+				}
+			} else {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Adds a file to be read.
+	 * 
+	 * @param file  the file
+	 * @param range the part of it to read, or null to read all of it
+	 */
+	private void add(File file, FileRange range) {
+		files.add(file);
+		ranges.add(range);
+	}
+
+	/**
+	 * @param name a path relative to the current working directory
+	 * @return the file with that path
+	 */
+	static File relativeFile(String name) {
+		// create a File with the path to the file from the current working directory
+		// since we interpret name as a relative path
+		return new File(ConcurrentREPL.currentWorkingDirectory + Filter.FILE_SEPARATOR + name);
+	}
+
+	/**
+	 * @param arg an argument of the command
+	 * @return true if the argument is a glob pattern rather than a file name
+	 */
+	private static boolean isGlob(String arg) {
+		return arg.indexOf('*') >= 0 || arg.indexOf('?') >= 0 || arg.indexOf('[') >= 0 || arg.indexOf('{') >= 0;
+	}
+
+	/**
+	 * Finds the files matching a glob. Only the last part of the path may contain
+	 * wildcards.
+	 * 
+	 * @param pattern the glob, relative to the current working directory
+	 * @return the matching files sorted by name
+	 */
+	private static List<File> expandGlob(String pattern) {
+		int sep = Math.max(pattern.lastIndexOf('/'), pattern.lastIndexOf(Filter.FILE_SEPARATOR));
+		File dir = relativeFile(sep < 0 ? "" : pattern.substring(0, sep));
+		PathMatcher matcher = FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(sep + 1));
+		File[] matches = dir.listFiles(f -> f.isFile() && matcher.matches(Paths.get(f.getName())));
+		if (matches == null) {
+			return new ArrayList<File>();
+		}
+		Arrays.sort(matches, Comparator.comparing(File::getName));
+		return Arrays.asList(matches);
+	}
+
 	/**
 	 * Overrides SequentialFilterprocessLine() - doesn't do anything.
 	 */
@@ -71,28 +221,405 @@ public class CatFilter extends ConcurrentFilter {
 	}
 
 	/**
-	 * Overrides {@link ConcurrentFilter#process()} to push lines of input from file
-	 * specified in command to the output.
+	 * Overrides {@link ConcurrentFilter#process()} to push lines of input from the
+	 * files specified in command to the output, one file after the other. With -f
+	 * the last file is then followed until the job is killed, see
+	 * {@link FileFollower}.
 	 * @throws InterruptedException 
 	 */
 	@Override
 	public void process() throws InterruptedException {
+		if (!follow) {
+			readAll(files.size());
+			return;
+		}
+		readAll(files.size() - 1);
+		try {
+			new FileFollower(files.get(files.size() - 1), output).follow();
+		} catch (ClosedByInterruptException e) {
+			// killed in the middle of a read
+			throw new InterruptedException();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
 
-		// open a Scanner on the File and read it line by line adding each line to the
-		// output message queue
-		Scanner s;
+	/**
+	 * Reads the first count files in order. While a file is being read the next
+	 * one is already opened, and read into memory if it is small, on one of the
+	 * {@link ReaderThreads}. Ranges are read on this thread when their turn comes.
+	 * 
+	 * @param count number of files to read
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void readAll(int count) throws InterruptedException {
+		if (count == 1 && ranges.get(0) == null) {
+			read(files.get(0));
+			return;
+		}
+		Future<OpenFile> next = count > 0 ? prefetch(0) : null;
 		try {
-			s = new Scanner(file);
-			while (s.hasNextLine()) {
-				output.add(s.nextLine());
+			for (int i = 0; i < count; i++) {
+				Future<OpenFile> current = next;
+				next = i + 1 < count ? prefetch(i + 1) : null;
+				if (current == null) {
+					try {
+						ranges.get(i).read(output);
+					} catch (NoSuchFileException e) {
+						// deleted since the command was parsed, skipped like a whole file
+					}
+					continue;
+				}
+				OpenFile open = await(current);
+				// a file deleted since the command was parsed is skipped
+				if (open != null) {
+					try (open) {
+						read(open);
+					}
+				}
+			}
+		} catch (ClosedByInterruptException e) {
+			throw new InterruptedException();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			if (next != null) {
+				discard(next);
+			}
+		}
+	}
+
+	/**
+	 * Reads a single file without prefetching it.
+	 * 
+	 * @param file the file
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void read(File file) throws InterruptedException {
+		try (OpenFile open = open(file, false)) {
+			read(open);
+		} catch (NoSuchFileException e) {
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Writes the lines of an opened file to the output, from the {@link FileCache}
+	 * or from memory if it was read in full when it was opened. Lines are passed on as bytes if
+	 * {@link #BYTE_LINES}, else as Strings.
+	 * 
+	 * @param file the opened file
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void read(OpenFile file) throws IOException, InterruptedException {
+		if (file.cached != null) {
+			file.cached.writeTo(output);
+		} else if (file.compression != Compression.NONE) {
+			readCompressed(file);
+		} else if (file.content != null) {
+			if (BYTE_LINES) {
+				LineSplitter splitter = new LineSplitter(output);
+				splitter.split(file.content, file.content.position());
+				splitter.end();
+			} else {
+				readStrings(new LineReader(
+						new ByteArrayInputStream(file.content.array(), 0, file.content.position())));
+			}
+		} else {
+			FileCache.Recorder recorder = file.recorder;
+			if (BYTE_LINES) {
+				readBytes(file.path, file.channel, file.size, recorder);
+			} else {
+				readStrings(new LineReader(recorder == null ? file.channel : recorder.tee(file.channel)));
+			}
+			if (recorder != null) {
+				// only once every line is out, and never if this stopped early
+				recorder.finish(!BYTE_LINES);
 			}
-			
-			s.close();
-			output.put(PoisonPill); //Added output.put(PoisonPill)
-		} 
-		catch (FileNotFoundException e) {
 		}
+	}
 
+	/**
+	 * Decompresses a file on a thread of its own while the lines it has already
+	 * produced are handed downstream, see {@link Decompressor}. A compressed file is
+	 * always streamed, since neither mapping nor reading it in chunks can find
+	 * lines without inflating everything before them first.
+	 * 
+	 * @param file the opened file
+	 * @throws IOException          if the compressed header cannot be read
+	 * @throws InterruptedException if interrupted while waiting for lines or for
+	 *                              room in the output
+	 */
+	private void readCompressed(OpenFile file) throws IOException, InterruptedException {
+		InputStream compressed = file.content != null
+				? new ByteArrayInputStream(file.content.array(), 0, file.content.position())
+				: Channels.newInputStream(file.channel);
+		// bounded like the output, so the decompressor stays only a pipe ahead
+		Pipe lines = new Pipe(output.getCapacity());
+		lines.setFilter(output.getFilter());
+		Thread thread = ConcurrentREPL.executionMode.newThread(
+				new Decompressor(file.compression.decompress(compressed), lines, BYTE_LINES),
+				"decompress " + file.path.getFileName());
+		thread.setDaemon(true);
+		thread.start();
+		try {
+			lines.transferTo(output);
+		} finally {
+			// stops the decompressor if this stopped early, does nothing otherwise
+			lines.cancel();
+		}
+	}
+
+	/**
+	 * Writes every line a reader reads to the output as a String.
+	 * 
+	 * @param reader the reader
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void readStrings(LineReader reader) throws IOException, InterruptedException {
+		// read the File line by line adding each line to the output message queue
+		String line;
+		while ((line = reader.readLine()) != null) {
+			output.put(line);
+		}
+	}
+
+	/**
+	 * Reads the file as raw bytes and writes each line to the output as a byte slice
+	 * without decoding it. The file is memory-mapped, read into a buffer, read
+	 * ahead asynchronously, or read in chunks on several threads as the
+	 * {@link ReadMode} decides. The buffered and mapped reads also hand the bytes to
+	 * the recorder, the asynchronous and parallel ones, which only pay off on files
+	 * too large to cache anyway, never do, so a file read that way is not cached.
+	 * 
+	 * @param path     path of the file
+	 * @param channel  channel open on the file
+	 * @param size     size of the file in bytes
+	 * @param recorder keeps the bytes for the {@link FileCache}, or null
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void readBytes(Path path, FileChannel channel, long size, FileCache.Recorder recorder)
+			throws IOException, InterruptedException {
+		if (readMode == ReadMode.ASYNC) {
+			new ReadAhead(path, output).read();
+		} else if (readMode.isParallel(size)) {
+			new ChunkedReader(channel, size, output).read();
+		} else if (readMode.maps(size)) {
+			readMapped(channel, recorder);
+		} else {
+			readBuffered(recorder == null ? channel : recorder.tee(channel));
+		}
+	}
+
+	/**
+	 * Opens a file, or finds its lines in the {@link FileCache}. Only a file no
+	 * larger than {@link ReadMode#PREFETCH_LIMIT} is ever read in full before its
+	 * first line is passed on: if it can be cached its lines are cached on the way.
+	 * A larger file that can be cached is streamed like any other, and the second
+	 * time it misses the bytes it streams are recorded and cached once it has been
+	 * read to the end, see {@link FileCache#admit(File, BasicFileAttributes)}.
+	 * 
+	 * @param file     the file
+	 * @param prefetch true to also read the file into memory if it is no larger
+	 *                 than {@link ReadMode#PREFETCH_LIMIT}
+	 * @return the opened file
+	 * @throws IOException if the file cannot be opened or read
+	 */
+	private static OpenFile open(File file, boolean prefetch) throws IOException {
+		// read before the file itself, so a change while it is read is noticed later
+		BasicFileAttributes attrs = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+		FileCache.Entry cached = FileCache.get(file, attrs);
+		if (cached != null) {
+			return new OpenFile(file.toPath(), null, cached.size, Compression.NONE, null, cached, null);
+		}
+		FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+		try {
+			long size = channel.size();
+			ByteBuffer head = ByteBuffer.allocate(2);
+			while (head.hasRemaining() && channel.read(head, head.position()) >= 0) {
+			}
+			Compression compression = Compression.detect(file.getName(), head.array(), head.position());
+			boolean cache = FileCache.BUDGET > 0 && compression == Compression.NONE && FileCache.accepts(size);
+			ByteBuffer content = null;
+			if ((cache || prefetch) && size <= ReadMode.PREFETCH_LIMIT) {
+				content = ByteBuffer.allocate((int) size);
+				while (content.hasRemaining() && channel.read(content, content.position()) >= 0) {
+				}
+			}
+			if (cache && content != null) {
+				cached = FileCache.put(file, attrs, content.array(), content.position(), !BYTE_LINES);
+				channel.close();
+				return new OpenFile(file.toPath(), null, size, compression, null, cached, null);
+			}
+			FileCache.Recorder recorder = cache && content == null ? FileCache.admit(file, attrs) : null;
+			return new OpenFile(file.toPath(), channel, size, compression, content, null, recorder);
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Starts opening a file on a reader thread.
+	 * 
+	 * @param index index of the file
+	 * @return the opened file once it is ready, or null if only a range of the
+	 *         file is read
+	 */
+	private Future<OpenFile> prefetch(int index) {
+		if (ranges.get(index) != null) {
+			return null;
+		}
+		File file = files.get(index);
+		return ReaderThreads.get().submit(() -> open(file, true));
+	}
+
+	/**
+	 * Waits for a file to be opened.
+	 * 
+	 * @param future the file being opened
+	 * @return the opened file, or null if it no longer exists
+	 * @throws IOException          if the file could not be opened or read
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static OpenFile await(Future<OpenFile> future) throws IOException, InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof NoSuchFileException) {
+				return null;
+			} else if (cause instanceof IOException) {
+				throw (IOException) cause;
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Stops opening a file that will not be read, closing it if it was already
+	 * open.
+	 * 
+	 * @param future the file being opened
+	 */
+	private static void discard(Future<OpenFile> future) {
+		if (!future.cancel(true)) {
+			try {
+				future.get().close();
+			} catch (Exception e) {
+				// it failed to open, so there is nothing to close
+			}
+		}
+	}
+
+	/**
+	 * Reads the file through a {@link LineReader}, passing each line on straight
+	 * out of its buffer.
+	 * 
+	 * @param channel channel reading the file from its start
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void readBuffered(ReadableByteChannel channel) throws IOException, InterruptedException {
+		LineReader reader = new LineReader(channel);
+		while (reader.next()) {
+			output.put(reader.buffer(), reader.start(), reader.length());
+		}
+	}
+
+	/**
+	 * Memory-maps the file one window at a time and scans each mapping in place,
+	 * so the file's bytes are only copied once, into the batches going downstream.
+	 * 
+	 * @param channel  channel open on the file
+	 * @param recorder keeps the bytes for the {@link FileCache}, or null
+	 * @throws IOException          if the file cannot be mapped
+	 * @throws InterruptedException if interrupted while writing to the output
+	 */
+	private void readMapped(FileChannel channel, FileCache.Recorder recorder) throws IOException, InterruptedException {
+		LineSplitter splitter = new LineSplitter(output);
+		long size = channel.size();
+		for (long pos = 0; pos < size; pos += ReadMode.MAP_WINDOW) {
+			int len = (int) Math.min(ReadMode.MAP_WINDOW, size - pos);
+			MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, pos, len);
+			if (recorder != null) {
+				recorder.record(window, 0, len);
+			}
+			splitter.split(window, len);
+		}
+		splitter.end();
+	}
+
+	/**
+	 * @return the files to be read, in order
+	 */
+	List<File> getFiles() {
+		return files;
+	}
+
+	/**
+	 * @return true if only part of some file is to be read
+	 */
+	boolean hasRanges() {
+		return ranges.stream().anyMatch(range -> range != null);
+	}
+
+	/**
+	 * @return true for cat -f
+	 */
+	boolean isFollow() {
+		return follow;
+	}
+
+	/**
+	 * Chooses how files are read when lines are passed on as bytes, instead of
+	 * {@link ReadMode#DEFAULT}.
+	 * 
+	 * @param mode how to read files
+	 */
+	void setReadMode(ReadMode mode) {
+		readMode = mode;
+	}
+
+	/**
+	 * Takes the place of the grep this cat is linked to, doing its work while
+	 * reading, see {@link #pushDown(LineMatcher, ConcurrentFilter)}.
+	 * 
+	 * @param grep the next filter, whose {@link GrepFilter#getPredicate()} is not
+	 *             null
+	 */
+	void pushDown(GrepFilter grep) {
+		takeOverLinks(this, grep);
+		pushDown(grep.getPredicate(), grep);
+	}
+
+	/**
+	 * Only passes on the lines a test matches: every line is tested as soon as it
+	 * is split from the read buffer, and only the lines that pass are queued, or
+	 * decoded at all. Every way of reading a file puts its lines through the
+	 * output pipe, or through a private pipe with the same filter, so they all
+	 * drop lines the same way.
+	 * 
+	 * @param predicate the test a line must pass
+	 * @param from      the filter the test belongs to
+	 */
+	void pushDown(LineMatcher predicate, ConcurrentFilter from) {
+		output.setFilter(predicate);
+		pushedDown = from;
+	}
+
+	/**
+	 * @return which filter's test this cat runs as it reads, if any
+	 */
+	@Override
+	String getStageNote() {
+		return pushedDown == null ? null : pushedDown + " pushed down";
 	}
 
 	/**
@@ -110,6 +637,77 @@ public class CatFilter extends ConcurrentFilter {
 
 	}
 
+	/**
+	 * A file opened by {@link CatFilter#open(File, boolean)}, possibly with its
+	 * whole content already read.
+	 */
+	private static final class OpenFile implements Closeable {
+
+		/**
+		 * path of the file
+		 */
+		final Path path;
+
+		/**
+		 * channel open on the file, null if its lines were cached
+		 */
+		final FileChannel channel;
+
+		/**
+		 * size of the file in bytes when it was opened
+		 */
+		final long size;
+
+		/**
+		 * how the file is compressed
+		 */
+		final Compression compression;
+
+		/**
+		 * the whole file, up to the buffer's position, or null if it was not read
+		 */
+		final ByteBuffer content;
+
+		/**
+		 * the file's lines from the {@link FileCache}, or null
+		 */
+		final FileCache.Entry cached;
+
+		/**
+		 * keeps the file's bytes as it is read, to cache them once it has been read
+		 * to the end, or null if it is not to be cached
+		 */
+		final FileCache.Recorder recorder;
+
+		/**
+		 * @param path        path of the file
+		 * @param channel     channel open on the file
+		 * @param size        size of the file in bytes
+		 * @param compression how the file is compressed
+		 * @param content     the whole file, or null
+		 * @param cached      the file's cached lines, or null
+		 * @param recorder    keeps the file's bytes for the cache as it is read, or
+		 *                    null
+		 */
+		OpenFile(Path path, FileChannel channel, long size, Compression compression, ByteBuffer content,
+				FileCache.Entry cached, FileCache.Recorder recorder) {
+			this.path = path;
+			this.channel = channel;
+			this.size = size;
+			this.compression = compression;
+			this.content = content;
+			this.cached = cached;
+			this.recorder = recorder;
+		}
+
+		@Override
+		public void close() throws IOException {
+			if (channel != null) {
+				channel.close();
+			}
+		}
+	}
+
 //	@Override
 //	public void run() {
 //		// TODO Auto-generated method stub
@@ -102,10 +102,6 @@ public class ChangeDirectoryFilter extends ConcurrentFilter {
 		} else if (!dest.equals(".")) {
 			ConcurrentREPL.currentWorkingDirectory = dest;
 		}
-		
-		
-		output.put(PoisonPill); //added output.put(PoisonPill) 
-
 	}
 
 	/**
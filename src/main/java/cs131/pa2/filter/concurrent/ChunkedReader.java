@@ -0,0 +1,189 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a large file for {@link CatFilter} on several threads. The file is cut
+ * into chunks of about {@link ReadMode#CHUNK_SIZE} bytes, each moved forward to
+ * the start of a line, and every chunk is split into lines on one of the
+ * {@link ReaderThreads} with a {@link LineReader} into a private {@link Pipe}.
+ * The cat thread hands the chunks downstream in file order with
+ * {@link Pipe#transferTo(Pipe)}, so the lines come out exactly as a single
+ * reader would produce them.
+ *
+ * Only twice as many chunks as there are readers are in flight at once, so
+ * reading ahead holds a bounded amount of the file in memory however far the
+ * rest of the pipeline falls behind.
+ *
+ * @author cs131a
+ *
+ */
+class ChunkedReader {
+
+	/**
+	 * the file being read
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * size of the file in bytes
+	 */
+	private final long size;
+
+	/**
+	 * where the lines are written
+	 */
+	private final Pipe output;
+
+	/**
+	 * Constructs a reader for a file.
+	 *
+	 * @param channel channel open on the file, only positional reads are used so
+	 *                the threads can share it
+	 * @param size    size of the file in bytes
+	 * @param output  where the lines are written
+	 */
+	ChunkedReader(FileChannel channel, long size, Pipe output) {
+		this.channel = channel;
+		this.size = size;
+		this.output = output;
+	}
+
+	/**
+	 * Reads the whole file into the output. Chunks still being read are cancelled
+	 * if this stops early.
+	 *
+	 * @throws InterruptedException if interrupted while waiting for a chunk or for
+	 *                              room in the output
+	 */
+	void read() throws InterruptedException {
+		long chunks = (size + ReadMode.CHUNK_SIZE - 1) / ReadMode.CHUNK_SIZE;
+		Deque<Future<Pipe>> pending = new ArrayDeque<Future<Pipe>>();
+		long next = 0;
+		try {
+			while (next < chunks && pending.size() < 2 * ReadMode.READERS) {
+				pending.add(submit(next++));
+			}
+			while (!pending.isEmpty()) {
+				Pipe chunk = await(pending.poll());
+				// keep the readers busy while this chunk is handed downstream
+				if (next < chunks) {
+					pending.add(submit(next++));
+				}
+				chunk.transferTo(output);
+			}
+		} finally {
+			for (Future<Pipe> future : pending) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Starts reading a chunk.
+	 *
+	 * @param index index of the chunk
+	 * @return the chunk's lines once they have been split
+	 */
+	private Future<Pipe> submit(long index) {
+		long from = index * ReadMode.CHUNK_SIZE;
+		long to = Math.min(size, from + ReadMode.CHUNK_SIZE);
+		return ReaderThreads.get().submit(() -> readChunk(from, to));
+	}
+
+	/**
+	 * Waits for a chunk and passes on any failure to read it.
+	 *
+	 * @param future the chunk being read
+	 * @return the chunk's lines
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static Pipe await(Future<Pipe> future) throws InterruptedException {
+		try {
+			return future.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw new UncheckedIOException((IOException) cause);
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Splits the lines that start between two offsets into a private pipe. Run on a
+	 * reader thread.
+	 *
+	 * @param from offset the chunk nominally starts at
+	 * @param to   offset the next chunk nominally starts at
+	 * @return an ended pipe holding the chunk's lines
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException never, the pipe is unbounded
+	 */
+	private Pipe readChunk(long from, long to) throws IOException, InterruptedException {
+		long start = lineStart(channel, from, size);
+		long end = lineStart(channel, to, size);
+		// nobody reads from this pipe until the chunk is done, so batches are only
+		// flushed once they are full and there is no bound on what it holds
+		Pipe chunk = new Pipe(Pipe.DEFAULT_BATCH_SIZE, Long.MAX_VALUE, PipeCapacity.lines(Integer.MAX_VALUE),
+				new LinkedBatchQueue());
+		// a grep pushed into the cat runs here, on the reader threads
+		chunk.setFilter(output.getFilter());
+		LineReader reader = new LineReader(channel, start, end);
+		while (reader.next()) {
+			chunk.put(reader.buffer(), reader.start(), reader.length());
+		}
+		chunk.close();
+		return chunk;
+	}
+
+	/**
+	 * Finds the first offset at or after pos where a line starts: just after a \n,
+	 * or just after a \r that is not followed by a \n. Every chunk begins at the
+	 * line start of its nominal offset and ends at the line start of the next
+	 * chunk's, so each line belongs to exactly one chunk and a \r\n is never split.
+	 * Only the bytes from just before pos to the end of that line are read.
+	 *
+	 * @param channel channel open on the file, only positional reads are used
+	 * @param pos     the offset to search from
+	 * @param size    size of the file in bytes
+	 * @return offset of the first line start at or after pos, or the file size if
+	 *         there is none
+	 * @throws IOException if the file cannot be read
+	 */
+	static long lineStart(FileChannel channel, long pos, long size) throws IOException {
+		if (pos <= 0 || pos >= size) {
+			return Math.min(Math.max(pos, 0), size);
+		}
+		ByteBuffer buf = ByteBuffer.allocate(4096);
+		// the byte before pos decides whether pos itself starts a line
+		long at = pos - 1;
+		byte prev = 0;
+		boolean first = true;
+		while (at < size) {
+			buf.clear();
+			int n = channel.read(buf, at);
+			if (n <= 0) {
+				break;
+			}
+			for (int i = 0; i < n; i++, at++) {
+				byte b = buf.get(i);
+				if (!first && (prev == '\n' || (prev == '\r' && b != '\n'))) {
+					return at;
+				}
+				first = false;
+				prev = b;
+			}
+		}
+		return size;
+	}
+}
@@ -0,0 +1,99 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * How a file read by {@link CatFilter} is compressed. gzip is told from its
+ * first two bytes, so a gzip file with an unusual name is still recognized,
+ * zlib and raw deflate only from the name, since their bytes alone cannot be
+ * told apart from text.
+ *
+ * @author cs131a
+ *
+ */
+enum Compression {
+	/**
+	 * a plain file
+	 */
+	NONE,
+	/**
+	 * gzip, which always starts with the bytes 1f 8b
+	 */
+	GZIP,
+	/**
+	 * deflate data in a zlib wrapper, whose first two bytes read as a big-endian
+	 * number are a multiple of 31 with 8 (deflate) in the low bits of the first,
+	 * named *.zz, *.zlib or *.deflate
+	 */
+	ZLIB,
+	/**
+	 * raw deflate data with no header at all, named *.deflate
+	 */
+	DEFLATE;
+
+	/**
+	 * size of the buffer the compressed bytes are read through
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * Works out how a file is compressed. A zlib header is only two bytes, and
+	 * plain text often starts with a pair that passes its check, "x^" is even the
+	 * header zlib itself writes at its fastest level, so a zlib header only counts
+	 * in a file named .zz, .zlib or .deflate. A .deflate file without one is raw
+	 * deflate. A file whose name says it is compressed but whose bytes do not is
+	 * read as it is.
+	 *
+	 * @param name  name of the file
+	 * @param head  the first bytes of the file
+	 * @param count number of bytes in head, fewer than 2 for a tiny file
+	 * @return how the file is compressed
+	 */
+	static Compression detect(String name, byte[] head, int count) {
+		String lower = name.toLowerCase(Locale.ROOT);
+		if (count >= 2) {
+			int b0 = head[0] & 0xff;
+			int b1 = head[1] & 0xff;
+			if (b0 == 0x1f && b1 == 0x8b) {
+				return GZIP;
+			}
+			// a preset dictionary (bit 0x20 of the second byte) cannot be inflated here
+			boolean zlibHeader = (b0 & 0x0f) == 8 && (b0 >> 4) <= 7 && (b1 & 0x20) == 0
+					&& ((b0 << 8) | b1) % 31 == 0;
+			boolean zlibName = lower.endsWith(".zz") || lower.endsWith(".zlib") || lower.endsWith(".deflate");
+			if (zlibHeader && zlibName) {
+				return ZLIB;
+			}
+		}
+		if (count > 0 && lower.endsWith(".deflate")) {
+			return DEFLATE;
+		}
+		return NONE;
+	}
+
+	/**
+	 * Wraps a stream of compressed bytes in one that decompresses them.
+	 *
+	 * @param in the compressed bytes
+	 * @return the decompressed bytes, in itself if this is {@link #NONE}
+	 * @throws IOException if a gzip header cannot be read
+	 */
+	InputStream decompress(InputStream in) throws IOException {
+		switch (this) {
+		case GZIP:
+			// reads every member of a file that is several gzip files concatenated
+			return new GZIPInputStream(in, BUFFER_SIZE);
+		case ZLIB:
+			return new InflaterInputStream(in, new Inflater(), BUFFER_SIZE);
+		case DEFLATE:
+			return new InflaterInputStream(in, new Inflater(true), BUFFER_SIZE);
+		default:
+			return in;
+		}
+	}
+}
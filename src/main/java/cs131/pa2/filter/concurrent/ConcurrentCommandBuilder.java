@@ -14,6 +14,25 @@ import cs131.pa2.filter.Message;
  *
  */
 public class ConcurrentCommandBuilder {
+	/**
+	 * whether adjacent line-by-line filters are fused into one stage, can be
+	 * turned off with the pa2.fusion system property
+	 */
+	static final boolean FUSION = Boolean.parseBoolean(System.getProperty("pa2.fusion", "true"));
+
+	/**
+	 * whether "cat files > dest" is run as a {@link CopyFilter}, can be turned off
+	 * with the pa2.zeroCopy system property
+	 */
+	static final boolean ZERO_COPY = Boolean.parseBoolean(System.getProperty("pa2.zeroCopy", "true"));
+
+	/**
+	 * whether a grep for strings right after a cat is run by the cat as it reads,
+	 * see {@link CatFilter#pushDown(GrepFilter)}, can be turned off with the
+	 * pa2.grep.pushDown system property
+	 */
+	static final boolean PUSH_DOWN = Boolean.parseBoolean(System.getProperty("pa2.grep.pushDown", "true"));
+
 	/**
 	 * Creates and returns a list of filters from the specified command
 	 * 
@@ -21,6 +40,19 @@ public class ConcurrentCommandBuilder {
 	 * @return the list of SequentialFilter that represent the specified command
 	 */
 	public static List<ConcurrentFilter> createFiltersFromCommand(String command) {
+		return createFiltersFromCommand(command, PipeCapacity.DEFAULT);
+	}
+
+	/**
+	 * Creates and returns a list of filters from the specified command whose pipes
+	 * are bounded by the specified capacity
+	 * 
+	 * @param command  the command to create filters from
+	 * @param capacity bound on the lines or bytes in flight between each pair of
+	 *                 filters
+	 * @return the list of SequentialFilter that represent the specified command
+	 */
+	public static List<ConcurrentFilter> createFiltersFromCommand(String command, PipeCapacity capacity) {
 
 		// determine final filter and remove its subcommand from the command (if it was
 		// a redirect) using helpers
@@ -95,14 +127,46 @@ public class ConcurrentCommandBuilder {
 		// if the first filter is grep, wc, uniq, redirect, head, or tail then throw IAE
 		// as all these commands require an input filter
 		ConcurrentFilter firstFilter = filters.get(0);
-		if (firstFilter instanceof GrepFilter || firstFilter instanceof WordCountFilter
+		if (firstFilter instanceof GrepFilter || firstFilter instanceof GrepSummaryFilter
+				|| firstFilter instanceof WordCountFilter
 				|| firstFilter instanceof UniqFilter || firstFilter instanceof RedirectFilter
 				|| firstFilter instanceof HeadFilter || firstFilter instanceof TailFilter) {
 			throw new IllegalArgumentException(Message.REQUIRES_INPUT.with_parameter(subCommands.get(0)));
 		}
 
 		// link filters all together
-		linkFilters(filters);
+		linkFilters(filters, capacity);
+
+		// linking has checked every filter can have its input and output, a cat that
+		// goes straight to a file is just a copy and needs no pipeline at all
+		if (ZERO_COPY && filters.size() == 2 && filters.get(0) instanceof CatFilter
+				&& filters.get(1) instanceof RedirectFilter && CopyFilter.canCopy((CatFilter) filters.get(0))) {
+			List<ConcurrentFilter> copy = new ArrayList<ConcurrentFilter>();
+			copy.add(new CopyFilter((CatFilter) filters.get(0), (RedirectFilter) filters.get(1)));
+			return copy;
+		}
+
+		// a cat followed by a grep for strings drops the lines the grep would as it
+		// reads them - after the copy check, since the cat no longer passes on every
+		// line once the grep is gone
+		if (PUSH_DOWN && filters.size() > 1 && filters.get(0) instanceof CatFilter) {
+			CatFilter cat = (CatFilter) filters.get(0);
+			if (filters.get(1) instanceof GrepFilter && ((GrepFilter) filters.get(1)).getPredicate() != null) {
+				cat.pushDown((GrepFilter) filters.remove(1));
+			} else if (filters.get(1) instanceof GrepSummaryFilter
+					&& ((GrepSummaryFilter) filters.get(1)).getPredicate() != null
+					&& !((GrepSummaryFilter) filters.get(1)).isQuiet()) {
+				// grep -c still counts what reaches it, which is only matches. grep -q is
+				// left alone, it stops at the first line that matches, which the cat would
+				// hold back in its batch while it read on looking for more
+				cat.pushDown(((GrepSummaryFilter) filters.get(1)).getPredicate(), filters.get(1));
+			}
+		}
+
+		// merge runs of line-by-line filters so they share one thread
+		if (FUSION) {
+			return fuseFilters(filters);
+		}
 		return filters;
 	}
 
@@ -195,7 +259,8 @@ public class ConcurrentCommandBuilder {
 		} else if (canPassToFilter(trimmed, "cat")) {
 			return new CatFilter(trimmed);
 		} else if (canPassToFilter(trimmed, "grep")) {
-			return new GrepFilter(trimmed);
+			GrepFilter grep = new GrepFilter(trimmed);
+			return grep.isSummary() ? new GrepSummaryFilter(grep) : grep;
 		} else if (trimmed.equals("wc")) {
 			return new WordCountFilter();
 		} else if (trimmed.equals("uniq")) {
@@ -216,14 +281,61 @@ public class ConcurrentCommandBuilder {
 		}
 	}
 
+	/**
+	 * Replaces every run of two or more adjacent filters that
+	 * {@link FusedFilter#canFuse(ConcurrentFilter)} accepts with a single
+	 * {@link FusedFilter}. Filters that override process() act as barriers and are
+	 * kept as they are.
+	 * 
+	 * @param filters the linked filters
+	 * @return the filters with fusible runs merged
+	 */
+	private static List<ConcurrentFilter> fuseFilters(List<ConcurrentFilter> filters) {
+		List<ConcurrentFilter> fused = new ArrayList<ConcurrentFilter>();
+		List<ConcurrentFilter> run = new ArrayList<ConcurrentFilter>();
+		for (ConcurrentFilter filter : filters) {
+			if (FusedFilter.canFuse(filter)) {
+				run.add(filter);
+			} else {
+				addRun(fused, run);
+				fused.add(filter);
+			}
+		}
+		addRun(fused, run);
+		return fused;
+	}
+
+	/**
+	 * Adds a run of fusible filters to the list - as a single FusedFilter if there
+	 * are at least two of them - and clears the run.
+	 * 
+	 * @param fused the list being built
+	 * @param run   adjacent fusible filters
+	 */
+	private static void addRun(List<ConcurrentFilter> fused, List<ConcurrentFilter> run) {
+		if (run.size() == 1) {
+			fused.add(run.get(0));
+		} else if (run.size() > 1) {
+			fused.add(new FusedFilter(run));
+		}
+		run.clear();
+	}
+
 	/**
 	 * links the given filters with the order they appear in the list
 	 * 
-	 * @param filters the given filters to link
+	 * @param filters  the given filters to link
+	 * @param capacity capacity of the pipe between each pair of filters
 	 * @return true if the link was successful, false if there were errors
 	 *         encountered. Any error should be displayed by using the Message enum.
 	 */
-	private static boolean linkFilters(List<ConcurrentFilter> filters) {
+	private static boolean linkFilters(List<ConcurrentFilter> filters, PipeCapacity capacity) {
+
+		// every filter creates its own output pipe when it is linked, so set the
+		// capacity before linking
+		for (ConcurrentFilter filter : filters) {
+			filter.setOutputCapacity(capacity);
+		}
 
 		// loop over filters starting from 2nd, link to previous. this will catch if
 		// filter i should have a previous input (or not) and if filter i - 1 should
@@ -4,9 +4,9 @@
  */
 
 package cs131.pa2.filter.concurrent;
-import java.util.LinkedList;
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
 
 import cs131.pa2.filter.Filter;
 
@@ -17,28 +17,32 @@ import cs131.pa2.filter.Filter;
  * @author cs131a
  *
  *
- *For all of the filters that implemented ConcurrentFilter, added output.put(PoisonPill) to the 
- *overridden process
+ *Filters never signal the end of their output themselves, {@link #run()} closes the output pipe once 
+ *process() returns, or fails it if process() throws, so the next filter knows the stream has ended
  */
 public abstract class ConcurrentFilter extends Filter implements Runnable {
 	/**
-	 * The input queue for this filter
+	 * The input pipe for this filter
+	 */
+	protected Pipe input;
+	/**
+	 * The output pipe for this filter
 	 */
-	protected LinkedBlockingQueue<String> input;
+	protected Pipe output;
 	/**
-	 * The output queue for this filter
+	 * The capacity of the output pipe created when the next filter is linked
 	 */
-	protected LinkedBlockingQueue<String> output;
+	protected PipeCapacity outputCapacity = PipeCapacity.DEFAULT;
 	
-	/* 
-	 * creates PosionPill string
+	/*
+	 * set once run() has finished
 	 */
-	public static final String PoisonPill = "EndEndEnd";
-
+	private volatile boolean done;
+	
 	/*
-	 * creates mainThread
+	 * System.nanoTime() when run() started and finished, 0 until then
 	 */
-	public Thread mainThread;
+	private volatile long startNanos, endNanos;
 	
 	@Override
 	public void setPrevFilter(Filter prevFilter) {
@@ -52,7 +56,8 @@ public abstract class ConcurrentFilter extends Filter implements Runnable {
 			this.next = sequentialNext;
 			sequentialNext.prev = this;
 			if (this.output == null){
-				this.output = new LinkedBlockingQueue<String>();
+				this.output = new Pipe(outputCapacity);
+				this.output.setEndpoints(toString(), sequentialNext.toString());
 			}
 			sequentialNext.input = this.output;
 		} else {
@@ -60,52 +65,101 @@ public abstract class ConcurrentFilter extends Filter implements Runnable {
 		}
 	}
 	
+	/**
+	 * Sets the capacity of the output pipe, must be called before the next filter is linked
+	 * @param capacity bound on the lines or bytes in flight to the next filter
+	 */
+	public void setOutputCapacity(PipeCapacity capacity) {
+		outputCapacity = capacity;
+	}
+	
+	/**
+	 * Puts this filter in the place of the linked filters from first to last, taking over the
+	 * input of first and the output of last. Used when several filters are replaced by one stage.
+	 * @param first the first filter being replaced
+	 * @param last the last filter being replaced, may be the same as first
+	 */
+	void takeOverLinks(ConcurrentFilter first, ConcurrentFilter last) {
+		input = first.input;
+		output = last.output;
+		prev = first.prev;
+		next = last.next;
+		if (prev != null) {
+			((ConcurrentFilter) prev).next = this;
+		}
+		if (next != null) {
+			((ConcurrentFilter) next).prev = this;
+		}
+	}
 	
 	/**
 	 * Processes the input queue and passes the result to the output queue
-	 * Once passing into output queue has finished, 
+	 * Reading blocks until the previous filter hands over more lines or ends its output,
+	 * so this only returns once every line of input has been processed
 	 * @throws InterruptedException 
 	 */
-	public void process() throws InterruptedException{  //implement poison pill into process	
-		while(isDone() == false) { 
-			String line = input.take();
-			String processedLine = processLine(line);
+	public void process() throws InterruptedException{
+		while(readNext()) { 
+			// lines that arrive as bytes are offered to processBytes() first, so a filter
+			// that can work on bytes never has to decode them
+			if (input.isBytes()) {
+				Boolean keep = processBytes(input.data(), input.start(), input.length());
+				if (keep != null) {
+					if (keep) {
+						output.put(input.data(), input.start(), input.length());
+					}
+					continue;
+				}
+			}
+			String processedLine = processLine(input.line());
 			if(processedLine != null) { 
 				output.put(processedLine);
 			}
 		}
-		
-		//if(output != null) {
-			//System.out.println(PoisonPill);
-			output.put(PoisonPill);
-			//mainThread.interrupt();
-		//}
-		
 	}
 	
 	@Override
 	/*
-	 * Is done not checks input for three different checks and returns a boolean regarding the condition
-	 * If it is empty it returns true 
-	 * if the top element in null it returns true 
-	 * if the top element is the PoisonPill it returns true 
-	 * if all these pass it returns false 
+	 * Is done once every line of input has been read and the previous filter has ended its output
+	 * A filter without input is done once it has run
 	 */
 	public boolean isDone() {
-		
-		if(input.isEmpty()) { 
-			return true;
-		}
-		else if(input.peek() == null) { 
-			return true;
-		}
-		else if(input.peek().equals(PoisonPill)) { 
-			return true;
-		}
-		else { 
-			return false;
+		if (input == null) {
+			return done;
 		}
+		return input.isEnded();
+	}
 	
+	/**
+	 * Reads the next line from the input pipe. Whenever the filter has used up the
+	 * batch it was reading, lines it has already written are flushed downstream if
+	 * there is no more input waiting or if they have been held for longer than the
+	 * flush interval, so output is not held back while this filter waits.
+	 * @return the next line of input, or null once the input has ended
+	 * @throws InterruptedException 
+	 * @throws PipeException if the previous filter failed
+	 */
+	protected String readLine() throws InterruptedException {
+		return readNext() ? input.line() : null;
+	}
+	
+	/**
+	 * Moves the input pipe on to the next line without decoding it, flushing output
+	 * the same way as {@link #readLine()}. The line is then read from the input pipe,
+	 * as bytes if {@link Pipe#isBytes()}.
+	 * @return true if there is a next line, false once the input has ended
+	 * @throws InterruptedException 
+	 * @throws PipeException if the previous filter failed
+	 */
+	protected boolean readNext() throws InterruptedException {
+		if (output != null && !input.hasBuffered()) {
+			if (input.isEmpty()) {
+				output.flush();
+			} else {
+				output.flushIfStale();
+			}
+		}
+		return input.advance();
 	}
 	
 	/**
@@ -118,26 +172,89 @@ public abstract class ConcurrentFilter extends Filter implements Runnable {
 	 */
 	protected abstract String processLine(String line);
 	
+	/**
+	 * Called by the {@link #process()} method instead of {@link #processLine(String)} for a line
+	 * that arrived as UTF-8 bytes. A filter that can do its work without decoding the line
+	 * overrides this, the default returns null so the line is decoded and passed to processLine().
+	 * The bytes are only valid until this returns.
+	 * @param data buffer holding the line
+	 * @param off offset of the line in data
+	 * @param len length of the line in bytes
+	 * @return true to pass the line on unchanged, false if nothing should be written for it
+	 * (it was dropped or already dealt with), or null if the line has to be decoded
+	 * @throws InterruptedException 
+	 */
+	protected Boolean processBytes(byte[] data, int off, int len) throws InterruptedException {
+		return null;
+	}
+	
 	/*
 	 * runs the thread through implementing runnable 
 	 * when thread runs it executes process()
 	 */
 	public void run() {
+		startNanos = System.nanoTime();
 		try {
 			process();
-		} catch (InterruptedException e) {
-			//System.out.println();
-			e.printStackTrace();
+			// tell the next filter there is nothing more coming
+			if (output != null) {
+				output.close();
+			}
+		} catch (CancellationException e) {
+			// the next filter stopped reading, so there is nobody left to produce for
+		} catch (InterruptedException | RuntimeException e) {
+			// pass the failure on so the rest of the pipeline stops instead of treating
+			// a partial stream as a complete one, the last filter reports it
+			Throwable cause = e instanceof PipeException ? e.getCause() : e;
+			if (output != null) {
+				try {
+					output.fail(cause);
+				} catch (InterruptedException | CancellationException ignored) {
+				}
+			} else if (!(cause instanceof InterruptedException)) {
+				System.err.println(cause);
+			}
+		} finally {
+			// this filter will not read any more, let the previous filter stop instead of
+			// blocking on a full pipe
+			if (input != null) {
+				input.cancel();
+			}
+			endNanos = System.nanoTime();
+			done = true;
 		}
 		
 	}
 	
-	/*
-	 * Sets instance of protected thread 
+	/**
+	 * Takes a snapshot of the lines, bytes and time this filter has handled so far,
+	 * can be called from any thread while the filter runs or after it has finished
+	 * @return the stats of this filter's stage
+	 */
+	public StageStats getStats() {
+		long start = startNanos;
+		long end = endNanos;
+		boolean running = end == 0;
+		long runNanos = start == 0 ? 0 : (running ? System.nanoTime() : end) - start;
+		return new StageStats(this, input, output, TimeUnit.NANOSECONDS.toMillis(runNanos), running && start != 0);
+	}
+	
+	/**
+	 * @return a note on the work of other filters this stage has taken over, shown
+	 *         next to its stats so filters merged away by the command builder do
+	 *         not just disappear, or null if it only does its own
 	 */
-	 public void createThread(Thread instThread){
-	        mainThread = instThread;
-	    }
+	String getStageNote() {
+		return null;
+	}
+	
+	/**
+	 * @return the name of this filter, used in pipe stall reports
+	 */
+	@Override
+	public String toString() {
+		return getClass().getSimpleName();
+	}
 	
 	
 	
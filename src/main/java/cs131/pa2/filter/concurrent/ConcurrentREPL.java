@@ -1,5 +1,7 @@
 package cs131.pa2.filter.concurrent;
-import java.util.LinkedList;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
 import java.util.Scanner;
 
@@ -32,6 +34,21 @@ public class ConcurrentREPL {
 	 */
 	static final String ReplJobs = "repl_jobs";
 	
+	/*
+	 * ReplStats string
+	 */
+	static final String ReplStats = "repl_stats";
+	
+	/*
+	 * ReplCache string, followed by "clear" it empties the cat file cache
+	 */
+	static final String ReplCache = "repl_cache";
+	
+	/*
+	 * number of finished jobs repl_stats keeps showing
+	 */
+	static final int RECENT_JOBS = 10;
+	
 	/*
 	 * Kill string
 	 */
@@ -44,9 +61,25 @@ public class ConcurrentREPL {
 	
 	
 	/* 
-	 * list for background threads
+	 * list for background jobs, a killed job's entry is set to null so that the
+	 * jobs after it keep their numbers
 	 */
-	public static List<Thread> bgThreads = new LinkedList<Thread>();
+	public static List<Job> bgJobs = new ArrayList<Job>();
+	
+	/*
+	 * every job started recently, foreground or background, oldest first - shown by repl_stats
+	 */
+	static Deque<Job> recentJobs = new ArrayDeque<Job>();
+	
+	/*
+	 * how filters are run - pooled, platform or virtual threads
+	 */
+	public static ExecutionMode executionMode = ExecutionMode.DEFAULT;
+	
+	/*
+	 * runs the filters of every command, created when the shell starts and shut down when it exits
+	 */
+	static PipelineExecutor executor;
 	
 	
 	/**
@@ -59,6 +92,10 @@ public class ConcurrentREPL {
 		System.out.print(Message.WELCOME);
 		// set cwd here so that it can be reset by tests that run main() function
 		currentWorkingDirectory = System.getProperty("user.dir");
+		// each run of the shell starts with its own, empty, list of background jobs
+		bgJobs = new ArrayList<Job>();
+		recentJobs = new ArrayDeque<Job>();
+		executor = new PipelineExecutor(executionMode);
 		Scanner consoleReader = new Scanner(System.in);
 		//List<Thread> bgThreads = new LinkedList<Thread>();
 		
@@ -83,12 +120,22 @@ public class ConcurrentREPL {
 			
 			
 			if(cmd.equals(ReplJobs)) {  //checks if replJobs want to be printed
-				replJobs(bgThreads);
+				replJobs(bgJobs);
+				continue;
+			}
+			
+			if(cmd.equals(ReplStats)) {  //checks if per stage stats want to be printed
+				replStats(recentJobs);
 				continue;
 			}
 			
-			if(cmd.startsWith(KILL)) {  //kill checker which doesn't work
-				killer(cmd, bgThreads);
+			if(cmd.trim().split("\\s+")[0].equals(ReplCache)) {  //checks if the file cache wants to be printed or cleared
+				replCache(cmd);
+				continue;
+			}
+			
+			if(cmd.startsWith(KILL)) {  //kill checker
+				killer(cmd, bgJobs);
 				continue;
 			} 
 			try {
@@ -96,46 +143,22 @@ public class ConcurrentREPL {
 				// necessary, and link them together - this can throw IAE so surround in
 				// try-catch so appropriate Message is printed (will be the message of the IAE)
 				List<ConcurrentFilter> filters = ConcurrentCommandBuilder.createFiltersFromCommand(cmd); //creates new filters each loop
-				List<Thread> threadsList = new LinkedList<Thread>(); //creates new threadsList each loop
-				Long IdChecker = Thread.currentThread().getId();
-				Thread main = null;
 				//if(filters.size() == 1 && filters.get(0) instanceof ExitFilter) { 
 				if(filters == null) { 
 					running = false;
 				} else {
-					//starts all of the threads 
-					for(ConcurrentFilter filter: filters) { 
-						Thread thread = new Thread(filter, cmd); 
-						//filter.createThread(thread); //class instance of thread in ConcurrentFilter
-						filter.createThread(thread);
-						thread.start(); //starts threads
-						threadsList.add(thread); //populates threadsList with threads
-					}
+					//starts all of the filters as one job
+					Job job = executor.start(filters, cmd);
+					remember(job);
 					
-					//check for ending thread to join all of them later in the code 
-					int sizeTL = threadsList.size()-1; //indexed size of threadsList
-					for(Thread thr : threadsList) { 
-						//thr.start(); // starts thread
-						if(thr == threadsList.get(sizeTL)) { 
-							main = thr; //end is the last filter which all others will join into
-						}
-					}
-					
-					if(bgChecker == false)  { //if bgChecker is false it joins all of the threads to the "main" ending thread
+					if(bgChecker == false)  { //if bgChecker is false wait for every filter of the job to finish
 						try {
-
-							if (IdChecker == 1){
-								//System.out.print(Thread.currentThread().toString());
-								main.join(); // join the main thread
-								for(Thread thr: threadsList) { 
-									thr.join(); //join all of the threads
-								}
-							}
+							job.join();
 						} catch (InterruptedException e) {
 							e.printStackTrace();
 						}
 					} else { //else the bgChecker is true and it is the background \
-						bgThreads.add(main);	     //process and needs to be added to the background List
+						bgJobs.add(job);	     //process and needs to be added to the background List
 					}
 					
 				}
@@ -151,25 +174,73 @@ public class ConcurrentREPL {
 		
 		System.out.print(Message.GOODBYE);
 		consoleReader.close();
+		// background jobs keep running, the executor's threads exit once they are done
+		executor.shutdown();
 
 }
 	/* 
 	 * relpJobs printer method which prints the background jobs --> the commands that end in &
-	 * @param list of bg threads 
-	 */
-	private static void replJobs(List<Thread> threads)  {
-		int ind = 1; 
-		for(Thread thr : threads) { 
-			if(thr != null) { 
-				if(thr.isAlive()) {
-					String str = "\t" + ind + ". " + thr.getName() + "&";
-					System.out.println(str);
-					ind++;
-				}
+	 * a job is numbered by its position in the list so numbers stay the same as jobs finish or are killed
+	 * @param list of bg jobs 
+	 */
+	private static void replJobs(List<Job> jobs)  {
+		for(int ind = 1; ind <= jobs.size(); ind++) { 
+			Job job = jobs.get(ind - 1);
+			if(job != null && job.isAlive()) {
+				String str = "\t" + ind + ". " + job.getCommand() + "&";
+				System.out.println(str);
+			}
+		}
+	}
+	
+	/*
+	 * adds a job to the recent jobs, dropping the oldest finished job once there are more
+	 * than RECENT_JOBS so a long session does not hold on to every job it ever ran
+	 * @param the job that was just started
+	 */
+	private static void remember(Job job) {
+		recentJobs.addLast(job);
+		if (recentJobs.size() > RECENT_JOBS) {
+			recentJobs.removeIf(old -> !old.isAlive() && recentJobs.size() > RECENT_JOBS);
+		}
+	}
+	
+	/*
+	 * repl_stats printer method which prints every stage of the running and recently finished jobs
+	 * with the lines and bytes it moved and where its time went
+	 * @param list of recent jobs, oldest first
+	 */
+	private static void replStats(Deque<Job> jobs) {
+		int ind = 1;
+		for (Job job : jobs) {
+			System.out.println("\t" + ind++ + ". " + job.getCommand().trim() + (job.isAlive() ? " (running)" : " (done)"));
+			for (ConcurrentFilter filter : job.getFilters()) {
+				System.out.println("\t\t" + filter.getStats());
 			}
 		}
 	}
 	
+	/*
+	 * repl_cache printer method which prints how full the cat file cache is and which files
+	 * it holds, most recently used first - "repl_cache clear" empties it first
+	 * @param the command entered into the repl
+	 */
+	private static void replCache(String cmd) {
+		String[] args = cmd.trim().split("\\s+");
+		if (args.length > 1) {
+			if (!args[1].equals("clear") || args.length > 2) {
+				System.out.print(Message.COMMAND_NOT_FOUND.with_parameter(cmd));
+				return;
+			}
+			FileCache.clear();
+		}
+		List<String> lines = FileCache.describe();
+		System.out.println("\t" + lines.get(0));
+		for (int i = 1; i < lines.size(); i++) {
+			System.out.println("\t\t" + lines.get(i));
+		}
+	}
+	
 	/*
 	 * @param the command entered into the repl 
 	 * takes away the & so the command can be passed into the filter creator 
@@ -185,24 +256,26 @@ public class ConcurrentREPL {
 	
 	/*
 	 * @params list of bg commands, command string 
-	 * matches the index that should be killed with the thread in the list and interrupts it 
-	 * doesnt work
-	 */
-	private static void killer(String cmd, List<Thread> threads) { 
-		String[] newCmd = cmd.trim().split(" ");
-		int toKillCounter = Integer.parseInt(newCmd[1]);
-		int counter = 1;
-		Thread toKill = null;
-		for(Thread thr : threads) {  
-			if(counter != toKillCounter) { 
-				//System.out.print(counter);
-				counter++;
-			} else { 
-				thr.interrupt();
-			}
+	 * interrupts every filter of the job with the given number (as printed by repl_jobs) and 
+	 * clears its entry without removing it so the other jobs keep their numbers
+	 */
+	private static void killer(String cmd, List<Job> jobs) { 
+		String[] newCmd = cmd.trim().split("\\s+");
+		int toKillCounter;
+		try {
+			toKillCounter = Integer.parseInt(newCmd[1]);
+		} catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+			System.out.print(Message.REQUIRES_PARAMETER.with_parameter(cmd));
+			return;
+		}
+		if (toKillCounter < 1 || toKillCounter > jobs.size()) {
+			return;
+		}
+		Job toKill = jobs.get(toKillCounter - 1);
+		if (toKill != null) {
+			toKill.kill();
 		}
-		threads.set(toKillCounter, null);
-		threads.remove(toKill);
+		jobs.set(toKillCounter - 1, null);
 	}
 	
 
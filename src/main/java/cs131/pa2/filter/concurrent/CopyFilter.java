@@ -0,0 +1,234 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Runs "cat files > dest" as a single stage that copies the files straight into
+ * the destination, replacing a {@link CatFilter} linked to a
+ * {@link RedirectFilter}. A file that only has \n line terminators comes out of
+ * cat and redirect byte for byte as it went in, except that a missing last
+ * terminator is added, so such a file is copied by the kernel with
+ * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}
+ * and never passes through the pipeline at all.
+ *
+ * From its first \r on, since redirect would rewrite its terminators, a file is
+ * copied line by line through a {@link LineReader} instead, which still writes
+ * exactly what cat and redirect would. A compressed file is copied line by line
+ * from the start.
+ *
+ * @author cs131a
+ *
+ */
+public class CopyFilter extends ConcurrentFilter {
+
+	/**
+	 * bytes handed to the kernel per transferTo() call, so a kill is noticed
+	 * between calls even on a huge file
+	 */
+	private static final long TRANSFER_CHUNK = 64L << 20;
+
+	/**
+	 * the files cat would have read, in order
+	 */
+	private final List<File> files;
+
+	/**
+	 * the file redirect would have written
+	 */
+	private final String dest;
+
+	/**
+	 * Constructs a copy from a linked cat and redirect.
+	 *
+	 * @param cat      the cat
+	 * @param redirect the redirect its output went to
+	 */
+	public CopyFilter(CatFilter cat, RedirectFilter redirect) {
+		super();
+		files = cat.getFiles();
+		dest = redirect.getDestination();
+	}
+
+	/**
+	 * Determines whether a cat and a redirect can be run as a copy, which is the
+	 * case unless cat follows its last file or reads only part of a file, lines
+	 * are passed on as Strings (which replaces invalid UTF-8), or the platform
+	 * ends lines with something other than \n.
+	 *
+	 * @param cat the cat
+	 * @return true if the cat can be replaced by a copy
+	 */
+	public static boolean canCopy(CatFilter cat) {
+		return !cat.isFollow() && !cat.hasRanges() && CatFilter.BYTE_LINES && System.lineSeparator().equals("\n");
+	}
+
+	/**
+	 * Does nothing, the copy has no lines to process.
+	 */
+	@Override
+	protected String processLine(String line) {
+		return null;
+	}
+
+	/**
+	 * Overrides {@link ConcurrentFilter#process()} to copy every file to the
+	 * destination in order.
+	 */
+	@Override
+	public void process() throws InterruptedException {
+		try (FileChannel out = FileChannel.open(Paths.get(dest), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+				StandardOpenOption.APPEND)) {
+			for (File file : files) {
+				try (FileChannel in = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+					copy(in, file.getName(), out);
+				} catch (NoSuchFileException e) {
+					// deleted since the command was parsed, cat would have skipped it too
+				}
+			}
+		} catch (NoSuchFileException e) {
+			// the destination's directory does not exist, redirect writes nothing either
+		} catch (ClosedByInterruptException e) {
+			throw new InterruptedException();
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * Copies one file. The file is mapped a window at a time and each window is
+	 * scanned for a \r and handed to the kernel before the next one is looked at,
+	 * so copying starts at once and every byte is scanned only once. At the first
+	 * \r everything before it is transferred and the rest of the file is copied
+	 * line by line from there, the \r then ends a line whose start has already
+	 * been copied.
+	 *
+	 * @param in   channel open on the file
+	 * @param name name of the file
+	 * @param out  the destination
+	 * @throws IOException          if a file cannot be read or written
+	 * @throws InterruptedException if killed
+	 */
+	private static void copy(FileChannel in, String name, FileChannel out) throws IOException, InterruptedException {
+		long size = in.size();
+		ByteBuffer head = ByteBuffer.allocate(2);
+		while (head.hasRemaining() && in.read(head, head.position()) >= 0) {
+		}
+		Compression compression = Compression.detect(name, head.array(), head.position());
+		if (compression != Compression.NONE) {
+			copyLines(compression.decompress(Channels.newInputStream(in)), out);
+			return;
+		}
+		long pos = 0;
+		while (pos < size) {
+			int len = (int) Math.min(ReadMode.MAP_WINDOW, size - pos);
+			MappedByteBuffer window = in.map(FileChannel.MapMode.READ_ONLY, pos, len);
+			int plain = 0;
+			while (plain < len && window.get(plain) != '\r') {
+				plain++;
+			}
+			long copied = transfer(in, pos, plain, out);
+			pos += copied;
+			if (copied < plain) {
+				// the file shrank while it was copied
+				break;
+			}
+			if (plain < len) {
+				copyLines(Channels.newInputStream(in.position(pos)), out);
+				return;
+			}
+		}
+		// cat ends the last line even if the file did not
+		ByteBuffer last = ByteBuffer.allocate(1);
+		if (pos > 0 && in.read(last, pos - 1) == 1 && last.get(0) != '\n') {
+			writeFully(out, ByteBuffer.wrap(new byte[] { '\n' }));
+		}
+	}
+
+	/**
+	 * Has the kernel copy part of a file, {@link #TRANSFER_CHUNK} bytes per call.
+	 *
+	 * @param in    channel open on the file
+	 * @param pos   where the part starts
+	 * @param count number of bytes in the part
+	 * @param out   the destination
+	 * @return number of bytes copied, less than count if the file shrank
+	 * @throws IOException          if the file cannot be read or written
+	 * @throws InterruptedException if killed
+	 */
+	private static long transfer(FileChannel in, long pos, long count, FileChannel out)
+			throws IOException, InterruptedException {
+		long done = 0;
+		while (done < count) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException();
+			}
+			long n = in.transferTo(pos + done, Math.min(TRANSFER_CHUNK, count - done), out);
+			if (n <= 0) {
+				break;
+			}
+			done += n;
+		}
+		return done;
+	}
+
+	/**
+	 * Copies a stream line by line, ending every line with \n as redirect does.
+	 *
+	 * @param in  the stream, closed once it has been read
+	 * @param out the destination
+	 * @throws IOException          if the stream cannot be read or written
+	 * @throws InterruptedException if killed
+	 */
+	private static void copyLines(InputStream in, FileChannel out) throws IOException, InterruptedException {
+		ByteBuffer buf = ByteBuffer.allocate(LineReader.DEFAULT_BUFFER_SIZE);
+		try (LineReader reader = new LineReader(in)) {
+			while (reader.next()) {
+				if (buf.remaining() < reader.length() + 1) {
+					writeFully(out, buf.flip());
+					buf.clear();
+					if (Thread.interrupted()) {
+						throw new InterruptedException();
+					}
+				}
+				if (buf.capacity() < reader.length() + 1) {
+					buf = ByteBuffer.allocate(reader.length() + 1);
+				}
+				buf.put(reader.buffer(), reader.start(), reader.length()).put((byte) '\n');
+			}
+		}
+		writeFully(out, buf.flip());
+	}
+
+	/**
+	 * @return that this stage stands in for a cat and a redirect
+	 */
+	@Override
+	String getStageNote() {
+		return "CatFilter and RedirectFilter run as a file copy";
+	}
+
+	/**
+	 * Writes all of a buffer.
+	 *
+	 * @param out the destination
+	 * @param buf the bytes to write
+	 * @throws IOException if the destination cannot be written
+	 */
+	private static void writeFully(FileChannel out, ByteBuffer buf) throws IOException {
+		while (buf.hasRemaining()) {
+			out.write(buf);
+		}
+	}
+}
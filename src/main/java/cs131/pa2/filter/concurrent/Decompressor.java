@@ -0,0 +1,88 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Decompresses a file for {@link CatFilter} on a thread of its own and splits
+ * it into lines in a private {@link Pipe}, which the cat thread hands
+ * downstream with {@link Pipe#transferTo(Pipe)} while the next batches are
+ * still being inflated. Inflating is usually the slowest part of reading a
+ * compressed file, so this way it overlaps with the filtering further down the
+ * pipeline instead of taking turns with it.
+ *
+ * The pipe is bounded, so the decompressor never gets far ahead of the
+ * pipeline, and cancelling the pipe stops it at its next batch.
+ *
+ * @author cs131a
+ *
+ */
+class Decompressor implements Runnable {
+
+	/**
+	 * the decompressed bytes
+	 */
+	private final InputStream in;
+
+	/**
+	 * where the lines are written
+	 */
+	private final Pipe out;
+
+	/**
+	 * true to write lines as bytes, false to write them as Strings
+	 */
+	private final boolean bytes;
+
+	/**
+	 * Constructs a decompressor.
+	 *
+	 * @param in    the decompressed bytes, closed once they have been read
+	 * @param out   where the lines are written
+	 * @param bytes true to write lines as bytes, false to write them as Strings
+	 */
+	Decompressor(InputStream in, Pipe out, boolean bytes) {
+		this.in = in;
+		this.out = out;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * Writes every line to the pipe and ends it, with the failure if the data is
+	 * corrupt or cannot be read.
+	 */
+	@Override
+	public void run() {
+		try (LineReader reader = new LineReader(in)) {
+			if (bytes) {
+				while (reader.next()) {
+					out.put(reader.buffer(), reader.start(), reader.length());
+				}
+			} else {
+				String line;
+				while ((line = reader.readLine()) != null) {
+					out.put(line);
+				}
+			}
+			out.close();
+		} catch (CancellationException e) {
+			// cat stopped reading, so nobody wants the rest
+		} catch (IOException | InterruptedException | RuntimeException e) {
+			fail(e);
+		}
+	}
+
+	/**
+	 * Ends the pipe with a failure, unless it has already been cancelled.
+	 *
+	 * @param cause why decompressing failed
+	 */
+	private void fail(Exception cause) {
+		try {
+			out.fail(cause);
+		} catch (CancellationException | InterruptedException e) {
+			// nobody is left to tell
+		}
+	}
+}
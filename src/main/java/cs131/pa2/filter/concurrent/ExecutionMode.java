@@ -0,0 +1,121 @@
+package cs131.pa2.filter.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * How {@link PipelineExecutor} runs the filters of a command. Set with the
+ * pa2.threads system property.
+ *
+ * @author cs131a
+ *
+ */
+public enum ExecutionMode {
+	/**
+	 * filters run on a pool of platform threads that are reused across commands
+	 */
+	POOLED,
+	/**
+	 * every filter gets its own platform (OS) thread
+	 */
+	PLATFORM,
+	/**
+	 * every filter gets its own virtual thread, so a pipeline that is waiting on
+	 * its pipes costs heap instead of a kernel thread. Virtual threads need Java
+	 * 21, on older runtimes this falls back to platform threads with a warning.
+	 */
+	VIRTUAL;
+
+	/**
+	 * the mode used when none is specified
+	 */
+	public static final ExecutionMode DEFAULT = parse(System.getProperty("pa2.threads", "pooled"));
+
+	/**
+	 * true once the warning that VIRTUAL runs on platform threads has been printed
+	 */
+	private static final AtomicBoolean warnedNoVirtual = new AtomicBoolean();
+
+	/**
+	 * Thread.ofVirtual(), or null if this runtime has no virtual threads. Looked
+	 * up reflectively so the project still builds for Java 17.
+	 */
+	private static final Method OF_VIRTUAL;
+
+	/**
+	 * Thread.Builder.name(String)
+	 */
+	private static final Method NAME;
+
+	/**
+	 * Thread.Builder.unstarted(Runnable)
+	 */
+	private static final Method UNSTARTED;
+
+	static {
+		Method ofVirtual = null, name = null, unstarted = null;
+		try {
+			Class<?> builder = Class.forName("java.lang.Thread$Builder");
+			ofVirtual = Thread.class.getMethod("ofVirtual");
+			name = builder.getMethod("name", String.class);
+			unstarted = builder.getMethod("unstarted", Runnable.class);
+		} catch (ReflectiveOperationException e) {
+			// runtime older than Java 21, VIRTUAL behaves like PLATFORM
+			ofVirtual = null;
+		}
+		OF_VIRTUAL = ofVirtual;
+		NAME = name;
+		UNSTARTED = unstarted;
+	}
+
+	/**
+	 * Reads a mode name in any case. This runs while the class is initialized, so
+	 * throwing for a bad name would leave the class, and the shell that uses it,
+	 * unable to load at all: an unknown name is reported on stderr and
+	 * {@link #POOLED} is used instead.
+	 *
+	 * @param name the name of a mode
+	 * @return the mode, or POOLED if there is none by that name
+	 */
+	static ExecutionMode parse(String name) {
+		try {
+			return valueOf(name.trim().toUpperCase(Locale.ROOT));
+		} catch (IllegalArgumentException e) {
+			System.err.println("Unknown pa2.threads value " + name + ", using pooled");
+			return POOLED;
+		}
+	}
+
+	/**
+	 * @return true if this runtime supports virtual threads
+	 */
+	public static boolean virtualThreadsAvailable() {
+		return OF_VIRTUAL != null;
+	}
+
+	/**
+	 * Creates an unstarted thread for a filter, a platform thread in every mode
+	 * other than VIRTUAL. The first time VIRTUAL has to fall back to a platform
+	 * thread a warning is printed, since every waiting pipeline then holds kernel
+	 * threads again.
+	 *
+	 * @param task the filter to run
+	 * @param name the thread name, the command the filter belongs to
+	 * @return the new thread
+	 */
+	public Thread newThread(Runnable task, String name) {
+		if (this == VIRTUAL && OF_VIRTUAL != null) {
+			try {
+				Object builder = NAME.invoke(OF_VIRTUAL.invoke(null), name);
+				return (Thread) UNSTARTED.invoke(builder, task);
+			} catch (ReflectiveOperationException e) {
+				throw new IllegalStateException("Could not create a virtual thread", e);
+			}
+		}
+		if (this == VIRTUAL && warnedNoVirtual.compareAndSet(false, true)) {
+			System.err.println("Virtual threads need Java 21, running on platform threads instead");
+		}
+		return new Thread(task, name);
+	}
+}
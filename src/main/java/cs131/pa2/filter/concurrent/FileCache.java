@@ -0,0 +1,463 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The lines of files {@link CatFilter} has read recently, shared by every
+ * command, so running several pipelines over the same file only reads and
+ * splits it once. A small file, which is read in full anyway, is cached the
+ * first time. A larger one is streamed like any other file and only cached when
+ * it misses a second time with the same size and modification time, from the
+ * bytes that second read streams through, see {@link Recorder}. So a file read
+ * once is never read twice or held in memory, and the cache never holds back
+ * the first lines of a file. An entry is found by the file's canonical path and is only
+ * used while the file still has the size and modification time it had when it
+ * was read, otherwise it is read again and replaces the entry.
+ *
+ * The entries together stay within {@link #BUDGET} bytes, the least recently
+ * used ones are dropped to make room, and a file larger than a quarter of the
+ * budget is never cached so one big file cannot push out everything else. When
+ * lines are passed on as bytes an entry is the file's bytes and where each line
+ * starts, otherwise it is the lines already decoded into Strings.
+ *
+ * @author cs131a
+ *
+ */
+final class FileCache {
+
+	/**
+	 * most memory the cached lines may take, can be set with the pa2.cat.cache
+	 * system property using the byte syntax of {@link PipeCapacity#parse(String)},
+	 * 0 turns the cache off
+	 */
+	static final long BUDGET = budget(System.getProperty("pa2.cat.cache", "64MB"));
+
+	/**
+	 * most files remembered as having missed once, see {@link #admit}
+	 */
+	private static final int MISSED_LIMIT = 1024;
+
+	/**
+	 * estimated bytes an entry takes on top of its lines
+	 */
+	private static final long ENTRY_OVERHEAD = 128;
+
+	/**
+	 * estimated bytes a String takes on top of its characters
+	 */
+	private static final long STRING_OVERHEAD = 48;
+
+	/**
+	 * the entries by canonical path, least recently used first
+	 */
+	private static final LinkedHashMap<String, Entry> entries = new LinkedHashMap<String, Entry>(16, 0.75f, true);
+
+	/**
+	 * size and modification time of the files that missed once but were not
+	 * cached, by canonical path, least recently used first
+	 */
+	private static final LinkedHashMap<String, long[]> missed = new LinkedHashMap<String, long[]>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, long[]> eldest) {
+			return size() > MISSED_LIMIT;
+		}
+	};
+
+	/**
+	 * estimated bytes the entries take
+	 */
+	private static long used;
+
+	/**
+	 * number of reads served from the cache, read from the file, and entries
+	 * dropped to make room
+	 */
+	private static long hits, misses, evictions;
+
+	private FileCache() {
+	}
+
+	/**
+	 * @param spec a byte size, or 0
+	 * @return the size in bytes
+	 */
+	private static long budget(String spec) {
+		return spec.trim().equals("0") ? 0 : PipeCapacity.parse(spec).getLimit();
+	}
+
+	/**
+	 * @param size size of a file in bytes
+	 * @return true if a file of this size would be cached
+	 */
+	static boolean accepts(long size) {
+		return size <= BUDGET / 4;
+	}
+
+	/**
+	 * Finds the cached lines of a file.
+	 *
+	 * @param file  the file
+	 * @param attrs the file's attributes as they are now
+	 * @return the file's lines, or null if they are not cached or the file has
+	 *         changed since
+	 * @throws IOException if the file's canonical path cannot be found
+	 */
+	static Entry get(File file, BasicFileAttributes attrs) throws IOException {
+		if (BUDGET <= 0 || !accepts(attrs.size())) {
+			return null;
+		}
+		String path = file.getCanonicalPath();
+		synchronized (FileCache.class) {
+			Entry entry = entries.get(path);
+			if (entry != null && entry.size == attrs.size()
+					&& entry.modified == attrs.lastModifiedTime().toMillis()) {
+				hits++;
+				return entry;
+			}
+			misses++;
+			return null;
+		}
+	}
+
+	/**
+	 * Decides whether a file that missed should be cached as it is streamed, which
+	 * is the case the second time it misses with the same size and modification
+	 * time. The first time it is only remembered.
+	 *
+	 * @param file  the file
+	 * @param attrs the file's attributes as they are now
+	 * @return a recorder to stream the file's bytes through, or null if it is not
+	 *         to be cached this time
+	 * @throws IOException if the file's canonical path cannot be found
+	 */
+	static Recorder admit(File file, BasicFileAttributes attrs) throws IOException {
+		if (BUDGET <= 0 || !accepts(attrs.size())) {
+			return null;
+		}
+		String path = file.getCanonicalPath();
+		long[] key = { attrs.size(), attrs.lastModifiedTime().toMillis() };
+		synchronized (FileCache.class) {
+			long[] before = missed.get(path);
+			if (before == null || !Arrays.equals(before, key)) {
+				missed.put(path, key);
+				return null;
+			}
+			missed.remove(path);
+		}
+		return new Recorder(file, attrs);
+	}
+
+	/**
+	 * Splits a file read in full into lines and caches them, dropping the least
+	 * recently used entries if there is not enough room. The attributes must have
+	 * been read before the file was, so a file changed while it was being read is
+	 * read again next time instead of being served stale.
+	 *
+	 * @param file    the file
+	 * @param attrs   the file's attributes from before it was read
+	 * @param data    the file's bytes
+	 * @param len     number of bytes of data in use
+	 * @param strings true to cache decoded Strings, false to cache the bytes
+	 * @return the new entry
+	 * @throws IOException if the file's canonical path cannot be found
+	 */
+	static Entry put(File file, BasicFileAttributes attrs, byte[] data, int len, boolean strings)
+			throws IOException {
+		String path = file.getCanonicalPath();
+		Entry entry = new Entry(path, len, attrs.lastModifiedTime().toMillis(), data, strings);
+		if (BUDGET <= 0 || entry.cost > BUDGET || len != attrs.size()) {
+			return entry;
+		}
+		synchronized (FileCache.class) {
+			Entry old = entries.put(path, entry);
+			if (old != null) {
+				used -= old.cost;
+			}
+			used += entry.cost;
+			Iterator<Entry> lru = entries.values().iterator();
+			while (used > BUDGET && lru.hasNext()) {
+				Entry victim = lru.next();
+				if (victim != entry) {
+					lru.remove();
+					used -= victim.cost;
+					evictions++;
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Drops every entry.
+	 */
+	static synchronized void clear() {
+		entries.clear();
+		missed.clear();
+		used = 0;
+	}
+
+	/**
+	 * @return one line on the cache as a whole, followed by one line per entry from
+	 *         the most recently used, for the repl_cache command
+	 */
+	static synchronized List<String> describe() {
+		List<String> lines = new ArrayList<String>();
+		lines.add(entries.size() + " files, " + used + "B of " + BUDGET + "B, " + hits
+				+ " hits, " + misses + " misses, " + evictions + " evictions");
+		List<Entry> recent = new ArrayList<Entry>(entries.values());
+		for (int i = recent.size() - 1; i >= 0; i--) {
+			Entry entry = recent.get(i);
+			lines.add(entry.path + ": " + entry.count + " lines, " + entry.cost + "B");
+		}
+		return lines;
+	}
+
+	/**
+	 * The lines of one file, which never change once the entry is made, so any
+	 * number of commands can replay them at once.
+	 */
+	static final class Entry {
+
+		/**
+		 * canonical path of the file
+		 */
+		final String path;
+
+		/**
+		 * size and modification time of the file when it was read
+		 */
+		final long size, modified;
+
+		/**
+		 * number of lines
+		 */
+		final int count;
+
+		/**
+		 * the file's bytes, null if the lines are cached as Strings
+		 */
+		private final byte[] data;
+
+		/**
+		 * where each line starts in data and how long it is, without its terminator
+		 */
+		private final int[] starts, lengths;
+
+		/**
+		 * the decoded lines, null if the lines are cached as bytes
+		 */
+		private final String[] lines;
+
+		/**
+		 * estimated bytes the entry takes
+		 */
+		final long cost;
+
+		/**
+		 * Splits a file's bytes into lines. Lines end at \n, \r\n or \r like they do for
+		 * {@link LineReader}.
+		 *
+		 * @param path     canonical path of the file
+		 * @param size     number of bytes of data in use, the size of the file
+		 * @param modified modification time of the file
+		 * @param data     the file's bytes
+		 * @param strings  true to decode the lines into Strings and keep only those
+		 */
+		private Entry(String path, int size, long modified, byte[] data, boolean strings) {
+			this.path = path;
+			this.size = size;
+			this.modified = modified;
+			int[] s = new int[size / 32 + 16];
+			int[] l = new int[s.length];
+			int n = 0;
+			int start = 0;
+			for (int i = 0; i < size; i++) {
+				byte b = data[i];
+				if (b != '\n' && b != '\r') {
+					continue;
+				}
+				if (n == s.length) {
+					s = Arrays.copyOf(s, n * 2);
+					l = Arrays.copyOf(l, n * 2);
+				}
+				s[n] = start;
+				l[n++] = i - start;
+				// \r\n is one terminator
+				if (b == '\r' && i + 1 < size && data[i + 1] == '\n') {
+					i++;
+				}
+				start = i + 1;
+			}
+			if (start < size) {
+				// the last line has no terminator
+				if (n == s.length) {
+					s = Arrays.copyOf(s, n + 1);
+					l = Arrays.copyOf(l, n + 1);
+				}
+				s[n] = start;
+				l[n++] = size - start;
+			}
+			count = n;
+			if (strings) {
+				lines = new String[n];
+				long chars = 0;
+				for (int i = 0; i < n; i++) {
+					lines[i] = new String(data, s[i], l[i], StandardCharsets.UTF_8);
+					chars += STRING_OVERHEAD + lines[i].length();
+				}
+				this.data = null;
+				starts = null;
+				lengths = null;
+				cost = ENTRY_OVERHEAD + 8L * n + chars;
+			} else {
+				lines = null;
+				this.data = data.length == size ? data : Arrays.copyOf(data, size);
+				starts = Arrays.copyOf(s, n);
+				lengths = Arrays.copyOf(l, n);
+				cost = ENTRY_OVERHEAD + size + 8L * n;
+			}
+		}
+
+		/**
+		 * Writes every line to a pipe, as bytes or as Strings depending on how they are
+		 * cached.
+		 *
+		 * @param out the pipe
+		 * @throws InterruptedException if interrupted while writing to the pipe
+		 */
+		void writeTo(Pipe out) throws InterruptedException {
+			if (lines != null) {
+				for (String line : lines) {
+					out.put(line);
+				}
+			} else {
+				for (int i = 0; i < count; i++) {
+					out.put(data, starts[i], lengths[i]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Collects the bytes of a file as {@link CatFilter} streams it, so they can be
+	 * cached without reading the file again. Only used by the producer reading the
+	 * file.
+	 */
+	static final class Recorder {
+
+		/**
+		 * the file
+		 */
+		private final File file;
+
+		/**
+		 * the file's attributes from before it was read
+		 */
+		private final BasicFileAttributes attrs;
+
+		/**
+		 * the bytes so far, allocated when the first ones arrive, null again if the
+		 * file turned out larger than it was
+		 */
+		private byte[] data;
+
+		/**
+		 * number of bytes of data in use
+		 */
+		private int length;
+
+		/**
+		 * true once more bytes arrived than the file had, so it changed while it was
+		 * read
+		 */
+		private boolean overflowed;
+
+		/**
+		 * @param file  the file
+		 * @param attrs the file's attributes from before it was read
+		 */
+		private Recorder(File file, BasicFileAttributes attrs) {
+			this.file = file;
+			this.attrs = attrs;
+		}
+
+		/**
+		 * Keeps the next bytes of the file.
+		 *
+		 * @param src buffer holding the bytes
+		 * @param off index of the bytes in src
+		 * @param n   number of bytes
+		 */
+		void record(ByteBuffer src, int off, int n) {
+			if (overflowed) {
+				return;
+			}
+			if (data == null) {
+				data = new byte[(int) attrs.size()];
+			}
+			if (length + n > data.length) {
+				overflowed = true;
+				data = null;
+				return;
+			}
+			src.get(off, data, length, n);
+			length += n;
+		}
+
+		/**
+		 * @param in a channel reading the file from its start
+		 * @return a channel that reads the same bytes and keeps them
+		 */
+		ReadableByteChannel tee(ReadableByteChannel in) {
+			return new ReadableByteChannel() {
+				@Override
+				public int read(ByteBuffer dst) throws IOException {
+					int start = dst.position();
+					int n = in.read(dst);
+					if (n > 0) {
+						record(dst, start, n);
+					}
+					return n;
+				}
+
+				@Override
+				public boolean isOpen() {
+					return in.isOpen();
+				}
+
+				@Override
+				public void close() throws IOException {
+					in.close();
+				}
+			};
+		}
+
+		/**
+		 * Caches the file if every one of its bytes went by, and the file did not
+		 * change size on the way.
+		 *
+		 * @param strings true to cache decoded Strings, false to cache the bytes
+		 * @throws IOException if the file's canonical path cannot be found
+		 */
+		void finish(boolean strings) throws IOException {
+			if (data != null && length == data.length) {
+				put(file, attrs, data, length, strings);
+			}
+			data = null;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package cs131.pa2.filter.concurrent;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reads a file for cat -f and then keeps reading what is appended to it, like
+ * tail -f, until the job is killed or the rest of the pipeline stops reading.
+ * Instead of sleeping and checking the size over and over, it waits on a
+ * {@link WatchService} for the file's directory to report a change, then reads
+ * from the offset it got to last time, so nothing is read twice.
+ *
+ * Only complete lines are passed on: a line still being written stays in a
+ * {@link LineSplitter} until its terminator arrives. A file that shrinks was
+ * truncated and is read again from the start, and a file that is deleted and
+ * created again, as log rotation does, is reopened.
+ *
+ * @author cs131a
+ *
+ */
+class FileFollower {
+
+	/**
+	 * longest wait for a change before checking the file anyway, can be set with
+	 * the pa2.cat.followMillis system property. Watch services on some file systems
+	 * miss changes, and this also bounds how long it takes to notice the pipeline
+	 * has stopped while the file is quiet
+	 */
+	static final long CHECK_MILLIS = Long.getLong("pa2.cat.followMillis", 1000);
+
+	/**
+	 * the file being followed
+	 */
+	private final Path path;
+
+	/**
+	 * where the lines are written
+	 */
+	private final Pipe output;
+
+	/**
+	 * Constructs a follower.
+	 *
+	 * @param file   the file to follow
+	 * @param output where the lines are written
+	 */
+	FileFollower(File file, Pipe output) {
+		this.path = file.toPath().toAbsolutePath();
+		this.output = output;
+	}
+
+	/**
+	 * Writes every line of the file, then every line appended to it, to the output.
+	 * Only returns by throwing.
+	 *
+	 * @throws IOException           if the file cannot be read or watched
+	 * @throws InterruptedException  if the job is killed
+	 * @throws CancellationException if the next filter stops reading
+	 */
+	void follow() throws IOException, InterruptedException {
+		try (WatchService watcher = path.getFileSystem().newWatchService()) {
+			path.getParent().register(watcher, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+			FileChannel channel = open();
+			try {
+				ByteBuffer buf = ByteBuffer.allocate(LineReader.DEFAULT_BUFFER_SIZE);
+				LineSplitter splitter = new LineSplitter(output);
+				// offset of the first byte not yet read
+				long offset = 0;
+				while (true) {
+					if (channel != null) {
+						if (channel.size() < offset) {
+							// truncated, what is there now is all new
+							splitter.end();
+							splitter = new LineSplitter(output);
+							offset = 0;
+						}
+						int n;
+						while ((n = channel.read(buf.clear(), offset)) > 0) {
+							splitter.split(buf, n);
+							offset += n;
+						}
+					}
+					// the lines must not wait for a batch to fill, more may never come; this
+					// is also where a cancelled pipe stops the loop
+					output.flush();
+					WatchKey key = watcher.poll(CHECK_MILLIS, TimeUnit.MILLISECONDS);
+					if (key == null) {
+						continue;
+					}
+					boolean replaced = false;
+					for (WatchEvent<?> event : key.pollEvents()) {
+						if (event.kind() != ENTRY_MODIFY && path.getFileName().equals(event.context())) {
+							replaced = true;
+						}
+					}
+					key.reset();
+					if (replaced) {
+						// rotated, the rest of the old file's last line is never coming
+						splitter.end();
+						splitter = new LineSplitter(output);
+						offset = 0;
+						if (channel != null) {
+							channel.close();
+						}
+						channel = open();
+					}
+				}
+			} finally {
+				if (channel != null) {
+					channel.close();
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return a channel open on the file, or null if it does not exist right now
+	 * @throws IOException if the file exists but cannot be opened
+	 */
+	private FileChannel open() throws IOException {
+		try {
+			return FileChannel.open(path, StandardOpenOption.READ);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+	}
+}
@@ -0,0 +1,177 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+import java.util.function.Function;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Part of a file for {@link CatFilter} to read, so one large file can be split
+ * between several jobs. Written after the file name as either
+ * <ul>
+ * <li>name@offset+length, the lines that start in the given bytes, or
+ * name@offset for the lines from offset to the end. Each bound is moved forward
+ * to the start of a line, so ranges that meet, such as big.log@0+1GB and
+ * big.log@1GB+1GB, share no lines and together leave none out. Sizes are a
+ * number of bytes, or of K, M or G bytes with a suffix such as 64K or 1GB.
+ * The range is found by seeking, only a line's worth of bytes around each bound
+ * is read before the range itself.</li>
+ * <li>name#first-last, lines first to last counting from 1, or name#first- for
+ * first to the end. Lines can only be counted by reading them, so the lines
+ * before the range are read without being decoded or passed on, and reading
+ * stops at the last one.</li>
+ * </ul>
+ *
+ * @author cs131a
+ *
+ */
+final class FileRange {
+
+	/**
+	 * name@offset or name@offset+length
+	 */
+	private static final Pattern BYTES = Pattern.compile("(.+)@(\\d+[KMG]?B?)(?:\\+(\\d+[KMG]?B?))?",
+			Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * a size, the number and its unit
+	 */
+	private static final Pattern SIZE = Pattern.compile("(\\d+)([KMG]?)B?", Pattern.CASE_INSENSITIVE);
+
+	/**
+	 * name#first-last or name#first-
+	 */
+	private static final Pattern LINES = Pattern.compile("(.+)#(\\d+)-(\\d*)");
+
+	/**
+	 * the file
+	 */
+	final File file;
+
+	/**
+	 * true if from and to count lines, false if they are byte offsets
+	 */
+	private final boolean lines;
+
+	/**
+	 * the first byte offset, or the first line counting from 1
+	 */
+	private final long from;
+
+	/**
+	 * the byte offset the range ends before, or the last line, Long.MAX_VALUE for
+	 * the end of the file
+	 */
+	private final long to;
+
+	/**
+	 * @param file  the file
+	 * @param lines true if from and to count lines
+	 * @param from  first byte offset or line
+	 * @param to    byte offset the range ends before or last line
+	 */
+	private FileRange(File file, boolean lines, long from, long to) {
+		this.file = file;
+		this.lines = lines;
+		this.from = from;
+		this.to = to;
+	}
+
+	/**
+	 * Parses an argument of cat as a range of a file. Only call this for an
+	 * argument that is not itself the name of a file, so a file whose name
+	 * happens to contain @ or # can still be read whole.
+	 *
+	 * @param arg      the argument
+	 * @param resolver turns a file name into the file
+	 * @return the range, or null if arg is not a range of an existing file
+	 */
+	static FileRange parse(String arg, Function<String, File> resolver) {
+		try {
+			Matcher m = BYTES.matcher(arg);
+			if (m.matches()) {
+				File file = resolver.apply(m.group(1));
+				if (!file.isFile()) {
+					return null;
+				}
+				long offset = size(m.group(2));
+				long end = m.group(3) == null ? Long.MAX_VALUE : offset + size(m.group(3));
+				// an end past Long.MAX_VALUE overflowed, it means the end of the file
+				return new FileRange(file, false, offset, end < offset ? Long.MAX_VALUE : end);
+			}
+			m = LINES.matcher(arg);
+			if (m.matches()) {
+				File file = resolver.apply(m.group(1));
+				long first = Long.parseLong(m.group(2));
+				long last = m.group(3).isEmpty() ? Long.MAX_VALUE : Long.parseLong(m.group(3));
+				if (!file.isFile() || first < 1 || last < first) {
+					return null;
+				}
+				return new FileRange(file, true, first, last);
+			}
+		} catch (IllegalArgumentException e) {
+			// a number too large to be an offset or a line
+		}
+		return null;
+	}
+
+	/**
+	 * @param spec a number of bytes, optionally followed by B, K, KB, M, MB, G or
+	 *             GB
+	 * @return the number of bytes
+	 * @throws IllegalArgumentException if the size does not fit in a long
+	 */
+	private static long size(String spec) {
+		Matcher m = SIZE.matcher(spec);
+		m.matches();
+		long n = Long.parseLong(m.group(1));
+		int shift = "KMG".indexOf(m.group(2).toUpperCase(Locale.ROOT)) * 10 + 10;
+		if (m.group(2).isEmpty()) {
+			shift = 0;
+		}
+		if (n > Long.MAX_VALUE >> shift) {
+			throw new IllegalArgumentException("Size too large: " + spec);
+		}
+		return n << shift;
+	}
+
+	/**
+	 * Writes the lines in the range to a pipe, as bytes if
+	 * {@link CatFilter#BYTE_LINES}, else as Strings.
+	 *
+	 * @param out the pipe
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException if interrupted while writing to the pipe
+	 */
+	void read(Pipe out) throws IOException, InterruptedException {
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			long size = channel.size();
+			LineReader reader;
+			if (lines) {
+				reader = new LineReader(channel, 0, size);
+				for (long skip = 1; skip < from; skip++) {
+					if (!reader.next()) {
+						return;
+					}
+				}
+			} else {
+				long start = ChunkedReader.lineStart(channel, Math.min(from, size), size);
+				long end = ChunkedReader.lineStart(channel, Math.min(to, size), size);
+				reader = new LineReader(channel, start, end);
+			}
+			// a byte range has already been cut to size
+			long last = lines ? to : Long.MAX_VALUE;
+			for (long line = lines ? from : 0; line <= last && reader.next(); line++) {
+				if (CatFilter.BYTE_LINES) {
+					out.put(reader.buffer(), reader.start(), reader.length());
+				} else {
+					out.put(reader.line());
+				}
+			}
+		}
+	}
+}
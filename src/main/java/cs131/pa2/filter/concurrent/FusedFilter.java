@@ -0,0 +1,121 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Runs a chain of adjacent line-by-line filters as a single stage. Each line
+ * read from the input is passed through every filter's processLine() in turn
+ * on the same thread, and whatever comes out of the last one is written to the
+ * output, so there is no thread or pipe between the fused filters.
+ *
+ * Only filters that rely on {@link ConcurrentFilter#process()} can be fused
+ * (see {@link #canFuse(ConcurrentFilter)}). Filters that override process(),
+ * like tail and wc, need to see the whole input at once and stay separate
+ * stages.
+ *
+ * @author cs131a
+ *
+ */
+public class FusedFilter extends ConcurrentFilter {
+
+	/**
+	 * the fused filters in pipeline order
+	 */
+	private final List<ConcurrentFilter> filters;
+
+	/**
+	 * Constructs a FusedFilter from already linked filters. The fused stage takes
+	 * over the first filter's input and the last filter's output, the pipes between
+	 * the fused filters are no longer used.
+	 *
+	 * @param filters at least two adjacent, linked filters that
+	 *                {@link #canFuse(ConcurrentFilter)} accepts
+	 */
+	public FusedFilter(List<ConcurrentFilter> filters) {
+		super();
+		this.filters = new ArrayList<ConcurrentFilter>(filters);
+		takeOverLinks(filters.get(0), filters.get(filters.size() - 1));
+	}
+
+	/**
+	 * Determines whether a filter can be fused with its neighbours, which is the
+	 * case when it does all of its work in processLine() and uses the default
+	 * {@link ConcurrentFilter#process()}.
+	 *
+	 * @param filter the filter to check
+	 * @return true if the filter can be part of a FusedFilter
+	 */
+	public static boolean canFuse(ConcurrentFilter filter) {
+		try {
+			return filter.getClass().getMethod("process").getDeclaringClass() == ConcurrentFilter.class;
+		} catch (NoSuchMethodException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Passes the line through each fused filter in turn, stopping as soon as one of
+	 * them drops it.
+	 */
+	@Override
+	protected String processLine(String line) {
+		for (ConcurrentFilter filter : filters) {
+			line = filter.processLine(line);
+			if (line == null) {
+				return null;
+			}
+		}
+		return line;
+	}
+
+	/**
+	 * Offers a byte line to each fused filter's processBytes() in turn. If one of
+	 * them needs the line decoded, it is decoded once and the rest of the chain runs
+	 * on the String, which is then written here.
+	 */
+	@Override
+	protected Boolean processBytes(byte[] data, int off, int len) throws InterruptedException {
+		for (int i = 0; i < filters.size(); i++) {
+			Boolean keep = filters.get(i).processBytes(data, off, len);
+			if (keep == null) {
+				String line = new String(data, off, len, StandardCharsets.UTF_8);
+				for (int j = i; j < filters.size(); j++) {
+					line = filters.get(j).processLine(line);
+					if (line == null) {
+						return false;
+					}
+				}
+				output.put(line);
+				return false;
+			} else if (!keep) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @return that the filters in the name share this stage's thread
+	 */
+	@Override
+	String getStageNote() {
+		return filters.size() + " filters fused into one stage";
+	}
+
+	/**
+	 * @return the names of the fused filters joined with +
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		for (ConcurrentFilter filter : filters) {
+			if (sb.length() > 0) {
+				sb.append('+');
+			}
+			sb.append(filter);
+		}
+		return sb.toString();
+	}
+}
@@ -1,27 +1,101 @@
 package cs131.pa2.filter.concurrent;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.PatternSyntaxException;
+
 import cs131.pa2.filter.Message;
 
 /**
  * Implements grep command - includes parsing grep command by overriding
  * necessary behavior of SequentialFilter.
  * 
+ * "grep query" keeps the lines that contain query. "grep -E regex" keeps the
+ * lines in which the regular expression regex matches somewhere, a regex that
+ * is really just a string (see {@link PatternCache#literal(String)}) is
+ * searched for like a query.
+ * 
+ * "grep -e first -e second" keeps the lines that contain any of the patterns,
+ * and "grep -f file" reads the patterns from a file, one per line with empty
+ * lines left out. The two can be mixed and combined with -E, and any text
+ * after the flags is one more pattern. Several strings are searched for all at
+ * once with an {@link AhoCorasick} automaton, several regular expressions are
+ * joined into one.
+ * 
+ * "grep -c" writes only the number of lines that match, and "grep -q" only
+ * whether any line does, as true or false. Both are run by a
+ * {@link GrepSummaryFilter} that uses this grep to test the lines.
+ * 
  * @author Chami Lamelas
  *
  */
 public class GrepFilter extends ConcurrentFilter {
 
+	/**
+	 * flag that makes the query a regular expression
+	 */
+	static final String EXTENDED = "-E";
+
+	/**
+	 * flag followed by one pattern
+	 */
+	static final String PATTERN = "-e";
+
+	/**
+	 * flag followed by a file of patterns
+	 */
+	static final String PATTERN_FILE = "-f";
+
+	/**
+	 * flag that writes the number of matching lines instead of the lines
+	 */
+	static final String COUNT = "-c";
+
+	/**
+	 * flag that writes whether any line matches instead of the lines
+	 */
+	static final String QUIET = "-q";
+
 	/**
 	 * holds the grep query
 	 */
 	private String query;
 
+	/**
+	 * search for the query prepared once, for lines that arrive as Strings or as
+	 * bytes, null if the query is a regular expression
+	 */
+	private LineMatcher matcher;
+
+	/**
+	 * matcher for a regular expression query, reset for every line instead of
+	 * making a new one, null if the query is a string
+	 */
+	private Matcher regex;
+
+	/**
+	 * true for grep -c
+	 */
+	private boolean count;
+
+	/**
+	 * true for grep -q, which takes precedence over -c
+	 */
+	private boolean quiet;
+
 	/**
 	 * constructs GrepFilter given grep command
 	 * 
 	 * @param cmd cmd is guaranteed to either be "grep" or "grep" followed by a
 	 *            space.
-	 * @throws IllegalArgumentException if query parameter was not provided
+	 * @throws IllegalArgumentException if query parameter was not provided, or the
+	 *                                  regular expression is not valid
 	 */
 	public GrepFilter(String cmd) {
 
@@ -34,6 +108,139 @@ public class GrepFilter extends ConcurrentFilter {
 
 		// we have a space, query will be trimmed string after space
 		query = cmd.substring(spaceIdx + 1).trim();
+		boolean extended = false;
+		// patterns given with -e or read with -f, null if neither flag was used
+		List<String> patterns = null;
+
+		// only known flags are taken off the front, so grep - still searches for -
+		while (true) {
+			String rest = query;
+			String[] split = query.split("\\s+", 2);
+			String flag = split[0];
+			query = split.length > 1 ? split[1] : "";
+			if (flag.equals(EXTENDED)) {
+				extended = true;
+			} else if (flag.equals(COUNT)) {
+				count = true;
+			} else if (flag.equals(QUIET)) {
+				quiet = true;
+			} else if (flag.equals(PATTERN) || flag.equals(PATTERN_FILE)) {
+				if (query.isEmpty()) {
+					throw new IllegalArgumentException(Message.REQUIRES_PARAMETER.with_parameter(cmd));
+				}
+				split = query.split("\\s+", 2);
+				query = split.length > 1 ? split[1] : "";
+				if (patterns == null) {
+					patterns = new ArrayList<String>();
+				}
+				if (flag.equals(PATTERN)) {
+					patterns.add(split[0]);
+				} else {
+					patterns.addAll(readPatterns(split[0], cmd));
+				}
+			} else {
+				// not a flag, so the query is everything from here on as it was typed
+				query = rest;
+				break;
+			}
+		}
+		if (patterns == null) {
+			if (query.isEmpty()) {
+				throw new IllegalArgumentException(Message.REQUIRES_PARAMETER.with_parameter(cmd));
+			}
+			patterns = Collections.singletonList(query);
+		} else if (!query.isEmpty()) {
+			patterns.add(query);
+		}
+		compile(patterns, extended, cmd);
+	}
+
+	/**
+	 * Prepares the search for the patterns.
+	 * 
+	 * @param patterns the patterns, a line matches if it matches any of them
+	 * @param extended true if the patterns are regular expressions
+	 * @param cmd      the command, for error messages
+	 * @throws IllegalArgumentException if a regular expression is not valid
+	 */
+	private void compile(List<String> patterns, boolean extended, String cmd) {
+
+		// regexes without metacharacters are searched for as strings, which can be
+		// done on the bytes of a line without decoding it
+		List<String> literals = patterns;
+		if (extended) {
+			literals = new ArrayList<String>();
+			for (String pattern : patterns) {
+				String literal = PatternCache.literal(pattern);
+				if (literal == null) {
+					literals = null;
+					break;
+				}
+				literals.add(literal);
+			}
+		}
+		if (literals != null) {
+			matcher = literals.size() == 1 ? new LiteralMatcher(literals.get(0)) : new AhoCorasick(literals);
+			return;
+		}
+
+		// a line matches any of several regexes if it matches their alternation
+		String joined = patterns.get(0);
+		if (patterns.size() > 1) {
+			joined = "(?:" + String.join(")|(?:", patterns) + ")";
+		}
+		try {
+			regex = PatternCache.get(joined).matcher("");
+		} catch (PatternSyntaxException e) {
+			throw new IllegalArgumentException(Message.COMMAND_NOT_FOUND.with_parameter(cmd));
+		}
+	}
+
+	/**
+	 * Reads the patterns of grep -f.
+	 * 
+	 * @param name the pattern file, relative to the current working directory
+	 * @param cmd  the command, for error messages
+	 * @return the non-empty lines of the file
+	 * @throws IllegalArgumentException if the file cannot be read
+	 */
+	private static List<String> readPatterns(String name, String cmd) {
+		File file = CatFilter.relativeFile(name);
+		try {
+			List<String> patterns = new ArrayList<String>();
+			for (String line : Files.readAllLines(file.toPath(), StandardCharsets.UTF_8)) {
+				if (!line.isEmpty()) {
+					patterns.add(line);
+				}
+			}
+			return patterns;
+		} catch (IOException e) {
+			throw new IllegalArgumentException(Message.FILE_NOT_FOUND.with_parameter(cmd));
+		}
+	}
+
+	/**
+	 * @return the test for a line this grep keeps, for a source to run on the lines
+	 *         as it reads them instead, or null if the query is a regular
+	 *         expression, which needs the lines decoded
+	 */
+	LineMatcher getPredicate() {
+		return matcher;
+	}
+
+	/**
+	 * @return true if this grep writes one summary line instead of the matching
+	 *         lines, so it has to be run by a {@link GrepSummaryFilter}
+	 */
+	boolean isSummary() {
+		return count || quiet;
+	}
+
+	/**
+	 * @return true for grep -q
+	 */
+	boolean isQuiet() {
+		return quiet;
 	}
 
 	/**
@@ -45,8 +252,8 @@ public class GrepFilter extends ConcurrentFilter {
 	protected String processLine(String line) {
 
 		// only have SequentialFilter:process() add lines to the output queue that
-		// include the query string
-		if (line.contains(query)) {
+		// include the query string or match the regex
+		if (matcher != null ? matcher.matches(line) : regex.reset(line).find()) {
 			return line;
 		}
 
@@ -54,6 +261,21 @@ public class GrepFilter extends ConcurrentFilter {
 		return null;
 	}
 
+	/**
+	 * Overrides {@link ConcurrentFilter#processBytes(byte[], int, int)} to match the
+	 * query against the UTF-8 bytes of the line, so matching lines are passed on
+	 * without ever being decoded. UTF-8 never encodes one character as part of
+	 * another, so a byte match is exactly a String match. A regular expression
+	 * needs the line decoded.
+	 */
+	@Override
+	protected Boolean processBytes(byte[] data, int off, int len) {
+		if (matcher == null) {
+			return null;
+		}
+		return matcher.matches(data, off, len);
+	}
+
 //	@Override
 //	public void run() {
 //		// TODO Auto-generated method stub
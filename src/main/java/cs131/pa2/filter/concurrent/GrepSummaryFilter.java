@@ -0,0 +1,92 @@
+package cs131.pa2.filter.concurrent;
+
+/**
+ * Runs grep -c and grep -q, which write one line about the matching lines
+ * instead of the lines themselves: how many there are for -c, and true or
+ * false for whether there are any for -q. The lines are tested by the
+ * {@link GrepFilter} the command was parsed into, on their bytes where it can.
+ *
+ * grep -q stops at the first match. Returning from {@link #process()} cancels
+ * the input, so the cat feeding it stops reading as well instead of scanning
+ * the rest of the file for an answer that is already known. For the same
+ * reason the test is never pushed down into the cat for -q, only for -c.
+ *
+ * @author cs131a
+ *
+ */
+public class GrepSummaryFilter extends ConcurrentFilter {
+
+	/**
+	 * the grep that tests each line
+	 */
+	private final GrepFilter grep;
+
+	/**
+	 * Constructs the filter for a parsed grep command.
+	 *
+	 * @param grep the grep, for which {@link GrepFilter#isSummary()} is true
+	 */
+	public GrepSummaryFilter(GrepFilter grep) {
+		super();
+		this.grep = grep;
+	}
+
+	/**
+	 * Overrides {@link ConcurrentFilter#process()} to count the matching lines,
+	 * stopping at the first one for grep -q, and then write the count or whether
+	 * it is more than 0.
+	 *
+	 * @throws InterruptedException
+	 */
+	@Override
+	public void process() throws InterruptedException {
+		long count = 0;
+		while (readNext()) {
+			if (matches()) {
+				count++;
+				if (grep.isQuiet()) {
+					break;
+				}
+			}
+		}
+		output.put(grep.isQuiet() ? String.valueOf(count > 0) : String.valueOf(count));
+	}
+
+	/**
+	 * @return true if the grep keeps the current input line
+	 * @throws InterruptedException
+	 */
+	private boolean matches() throws InterruptedException {
+		// bytes are tested as they are if the grep can, like ConcurrentFilter.process()
+		if (input.isBytes()) {
+			Boolean keep = grep.processBytes(input.data(), input.start(), input.length());
+			if (keep != null) {
+				return keep;
+			}
+		}
+		return grep.processLine(input.line()) != null;
+	}
+
+	/**
+	 * @return true for grep -q
+	 */
+	boolean isQuiet() {
+		return grep.isQuiet();
+	}
+
+	/**
+	 * @return the test the grep runs on each line, for the cat to run as it reads
+	 *         instead, or null if it has none (see {@link GrepFilter#getPredicate()})
+	 */
+	LineMatcher getPredicate() {
+		return grep.getPredicate();
+	}
+
+	/**
+	 * Overrides SequentialFilter.processLine() - only used through process().
+	 */
+	@Override
+	protected String processLine(String line) {
+		return grep.processLine(line);
+	}
+}
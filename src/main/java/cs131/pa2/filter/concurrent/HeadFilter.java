@@ -33,13 +33,13 @@ public class HeadFilter extends ConcurrentFilter {
 	 */
 	@Override
 	public void process() throws InterruptedException {
-		while (!input.isEmpty() && numRead < LIMIT) {
-			String line = input.poll();
+		// once LIMIT lines have been passed on, stop reading - run() cancels the input
+		// so the previous filter stops too
+		String line;
+		while (numRead < LIMIT && (line = readLine()) != null) {
 			output.put(line);
 			numRead++;
 		}
-		
-		output.put(PoisonPill); //output.put(PoisonPill)
 	}
 
 	/**
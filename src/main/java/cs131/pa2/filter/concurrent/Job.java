@@ -0,0 +1,99 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * A running command: the filters it was built from and one {@link Future} per
+ * filter for the stage that runs it. Returned by
+ * {@link PipelineExecutor#start(List, String)} whatever the execution mode, so
+ * the REPL can join foreground commands and list or kill background ones the
+ * same way.
+ *
+ * @author cs131a
+ *
+ */
+public class Job {
+
+	/**
+	 * the command as typed, without the trailing &amp;
+	 */
+	private final String command;
+
+	/**
+	 * the filters of the command in pipeline order
+	 */
+	private final List<ConcurrentFilter> filters;
+
+	/**
+	 * one future per filter, in the same order
+	 */
+	private final List<Future<?>> stages;
+
+	/**
+	 * Constructs a job.
+	 *
+	 * @param command the command as typed
+	 * @param filters the filters of the command
+	 * @param stages  one future per filter
+	 */
+	Job(String command, List<ConcurrentFilter> filters, List<Future<?>> stages) {
+		this.command = command;
+		this.filters = Collections.unmodifiableList(filters);
+		this.stages = stages;
+	}
+
+	/**
+	 * @return the command as typed, without the trailing &amp;
+	 */
+	public String getCommand() {
+		return command;
+	}
+
+	/**
+	 * @return the filters of the command in pipeline order
+	 */
+	public List<ConcurrentFilter> getFilters() {
+		return filters;
+	}
+
+	/**
+	 * @return true if any stage of this job is still running
+	 */
+	public boolean isAlive() {
+		for (Future<?> stage : stages) {
+			if (!stage.isDone()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Waits for every stage of this job to finish.
+	 *
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public void join() throws InterruptedException {
+		for (Future<?> stage : stages) {
+			try {
+				stage.get();
+			} catch (ExecutionException | CancellationException e) {
+				// a stage that failed or was killed has still finished
+			}
+		}
+	}
+
+	/**
+	 * Interrupts every stage of this job. Stages that have not started yet never
+	 * run.
+	 */
+	public void kill() {
+		for (Future<?> stage : stages) {
+			stage.cancel(true);
+		}
+	}
+}
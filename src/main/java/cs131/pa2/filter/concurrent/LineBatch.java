@@ -0,0 +1,187 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A fixed-capacity group of lines that is handed from one
+ * {@link ConcurrentFilter} to the next as a single queue element. Moving lines
+ * in batches means the queue's locks are taken once per batch instead of once
+ * per line.
+ *
+ * A line is held either as a String or as a UTF-8 byte slice of the batch's
+ * {@link #data} buffer. Byte lines are copied into one shared buffer instead of
+ * each becoming its own object, and are only decoded if a stage asks for the
+ * String.
+ *
+ * @author cs131a
+ *
+ */
+class LineBatch {
+
+	/**
+	 * the lines held by this batch, only the first {@link #size} are valid, null
+	 * for a line held as a byte slice that has not been decoded yet
+	 */
+	final String[] lines;
+
+	/**
+	 * shared buffer holding the bytes of every byte line, null until the first one
+	 * is added
+	 */
+	byte[] data;
+
+	/**
+	 * number of bytes of data in use
+	 */
+	int dataSize;
+
+	/**
+	 * offset into data of each byte line, null until the first one is added
+	 */
+	int[] starts;
+
+	/**
+	 * length in bytes of each byte line, null until the first one is added
+	 */
+	int[] lengths;
+
+	/**
+	 * number of lines currently held by this batch
+	 */
+	int size;
+
+	/**
+	 * estimated number of bytes held by this batch, one per character plus one
+	 * for each line terminator
+	 */
+	long bytes;
+
+	/**
+	 * number of capacity credits the producer acquired for this batch, returned
+	 * by the consumer once it picks the batch up
+	 */
+	int cost;
+
+	/**
+	 * value of {@link System#nanoTime()} when the first line was added, used to
+	 * decide when a partially filled batch has waited long enough to be flushed
+	 */
+	long createdNanos;
+
+	/**
+	 * true if this is the last batch of the stream, the lines it holds are still
+	 * delivered before the consumer sees the end
+	 */
+	boolean last;
+
+	/**
+	 * if the stream ended because the producer failed, the reason, else null
+	 */
+	Throwable error;
+
+	/**
+	 * Constructs an empty batch that can hold up to capacity lines.
+	 *
+	 * @param capacity maximum number of lines the batch can hold
+	 */
+	LineBatch(int capacity) {
+		lines = new String[capacity];
+		size = 0;
+		createdNanos = System.nanoTime();
+	}
+
+	/**
+	 * Adds a line to the end of the batch. Caller must check {@link #isFull()}
+	 * first.
+	 *
+	 * @param line the line to add
+	 */
+	void add(String line) {
+		lines[size++] = line;
+		bytes += line.length() + 1;
+	}
+
+	/**
+	 * Copies a line held as UTF-8 bytes, without its terminator, to the end of the
+	 * batch. Caller must check {@link #isFull()} first.
+	 *
+	 * @param src buffer holding the line
+	 * @param off offset of the line in src
+	 * @param len length of the line in bytes
+	 */
+	void add(byte[] src, int off, int len) {
+		int at = reserve(len);
+		System.arraycopy(src, off, data, at, len);
+	}
+
+	/**
+	 * Copies a line held as UTF-8 bytes in a buffer, without its terminator, to
+	 * the end of the batch. The buffer's position is not used or changed. Caller
+	 * must check {@link #isFull()} first.
+	 *
+	 * @param src buffer holding the line, for example a memory-mapped file
+	 * @param off index of the line in src
+	 * @param len length of the line in bytes
+	 */
+	void add(ByteBuffer src, int off, int len) {
+		int at = reserve(len);
+		src.get(off, data, at, len);
+	}
+
+	/**
+	 * Makes room for a byte line at the end of data and records it as the next
+	 * line of the batch.
+	 *
+	 * @param len length of the line in bytes
+	 * @return offset in data the line's bytes must be copied to
+	 */
+	private int reserve(int len) {
+		if (starts == null) {
+			starts = new int[lines.length];
+			lengths = new int[lines.length];
+			data = new byte[Math.max(len, 8192)];
+		} else if (dataSize + len > data.length) {
+			byte[] grown = new byte[Math.max(dataSize + len, data.length * 2)];
+			System.arraycopy(data, 0, grown, 0, dataSize);
+			data = grown;
+		}
+		int start = dataSize;
+		starts[size] = start;
+		lengths[size] = len;
+		lines[size++] = null;
+		dataSize += len;
+		bytes += len + 1;
+		return start;
+	}
+
+	/**
+	 * @param i index of a line
+	 * @return true if line i is held as a byte slice that has not been decoded
+	 */
+	boolean isBytes(int i) {
+		return lines[i] == null;
+	}
+
+	/**
+	 * Returns line i as a String, decoding it once if it is held as bytes.
+	 *
+	 * @param i index of a line
+	 * @return the line
+	 */
+	String line(int i) {
+		String line = lines[i];
+		if (line == null) {
+			line = new String(data, starts[i], lengths[i], StandardCharsets.UTF_8);
+			lines[i] = line;
+		}
+		return line;
+	}
+
+	/**
+	 * @return true if no more lines can be added to this batch
+	 */
+	boolean isFull() {
+		return size == lines.length;
+	}
+}
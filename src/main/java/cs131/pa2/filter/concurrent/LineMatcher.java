@@ -0,0 +1,26 @@
+package cs131.pa2.filter.concurrent;
+
+/**
+ * A test {@link GrepFilter} runs on every line, prepared once for the query.
+ * Lines can arrive as Strings or as UTF-8 byte slices, and both must give the
+ * same answer, so a line can be tested without ever being decoded.
+ *
+ * @author cs131a
+ *
+ */
+interface LineMatcher {
+
+	/**
+	 * @param line the line to test
+	 * @return true if the line matches
+	 */
+	boolean matches(String line);
+
+	/**
+	 * @param data buffer holding the line
+	 * @param off  offset of the line in data
+	 * @param len  length of the line in bytes
+	 * @return true if the line matches
+	 */
+	boolean matches(byte[] data, int off, int len);
+}
@@ -0,0 +1,308 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * Reads lines from a file or stream through one large buffer that is reused
+ * for the whole input, as a replacement for {@link Scanner#nextLine()} in any
+ * filter that reads input of its own. Lines end only at \n, \r\n or \r, and a
+ * \r\n split across two reads is still one terminator. Scanner also ended a
+ * line at U+0085, U+2028 and U+2029, which are now kept as part of the line,
+ * the same as cat and grep on Unix do.
+ *
+ * A line can be used as bytes, straight out of the buffer with
+ * {@link #next()}, {@link #buffer()}, {@link #start()} and {@link #length()},
+ * or as a String with {@link #readLine()}. While finding the end of a line the
+ * reader also notes whether every byte was ASCII, and such lines, and every
+ * line of a Latin-1 input, are turned into Strings by a plain copy instead of
+ * going through the charset decoder.
+ *
+ * @author cs131a
+ *
+ */
+public class LineReader implements Closeable {
+
+	/**
+	 * default size of the buffer, it only grows for a line longer than this
+	 */
+	public static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * where the bytes come from, null when reading a region of a file
+	 */
+	private final ReadableByteChannel in;
+
+	/**
+	 * the file a region of which is read, null when reading a stream
+	 */
+	private final FileChannel file;
+
+	/**
+	 * next offset of the region to read, and the offset it ends at
+	 */
+	private long filePos, fileEnd;
+
+	/**
+	 * charset the lines are decoded with
+	 */
+	private final Charset charset;
+
+	/**
+	 * true if charset decodes every byte to the char with the same value
+	 */
+	private final boolean latin1;
+
+	/**
+	 * the reusable buffer
+	 */
+	private byte[] buf;
+
+	/**
+	 * buf wrapped for channel reads
+	 */
+	private ByteBuffer wrapped;
+
+	/**
+	 * index in buf of the first byte not yet returned as part of a line
+	 */
+	private int pos;
+
+	/**
+	 * number of bytes of buf that have been read
+	 */
+	private int limit;
+
+	/**
+	 * true once the input has no more bytes
+	 */
+	private boolean eof;
+
+	/**
+	 * true if the last line ended with a \r, so a \n at the start of the next one
+	 * is part of the same terminator
+	 */
+	private boolean skipLF;
+
+	/**
+	 * position and length in buf of the current line
+	 */
+	private int start, length;
+
+	/**
+	 * true if every byte of the current line is ASCII
+	 */
+	private boolean ascii;
+
+	/**
+	 * Constructs a reader of UTF-8 lines from a channel.
+	 *
+	 * @param in the channel to read
+	 */
+	public LineReader(ReadableByteChannel in) {
+		this(in, StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a reader of UTF-8 lines from a stream, for example System.in.
+	 *
+	 * @param in the stream to read
+	 */
+	public LineReader(InputStream in) {
+		this(Channels.newChannel(in), StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a reader of lines from a channel.
+	 *
+	 * @param in         the channel to read
+	 * @param charset    charset the lines are decoded with
+	 * @param bufferSize initial size of the buffer
+	 */
+	public LineReader(ReadableByteChannel in, Charset charset, int bufferSize) {
+		this(in, null, 0, 0, charset, bufferSize);
+	}
+
+	/**
+	 * Constructs a reader of the UTF-8 lines in a region of a file. Only positional
+	 * reads are used, so several readers can share one channel.
+	 *
+	 * @param file channel open on the file
+	 * @param from offset the region starts at
+	 * @param to   offset the region ends at
+	 */
+	public LineReader(FileChannel file, long from, long to) {
+		this(null, file, from, to, StandardCharsets.UTF_8, DEFAULT_BUFFER_SIZE);
+	}
+
+	/**
+	 * Constructs a reader.
+	 *
+	 * @param in         the channel to read, or null to read a region of file
+	 * @param file       the file to read a region of, or null
+	 * @param from       offset the region starts at
+	 * @param to         offset the region ends at
+	 * @param charset    charset the lines are decoded with
+	 * @param bufferSize initial size of the buffer
+	 */
+	private LineReader(ReadableByteChannel in, FileChannel file, long from, long to, Charset charset,
+			int bufferSize) {
+		this.in = in;
+		this.file = file;
+		filePos = from;
+		fileEnd = to;
+		this.charset = charset;
+		latin1 = charset.equals(StandardCharsets.ISO_8859_1);
+		buf = new byte[Math.max(bufferSize, 16)];
+		wrapped = ByteBuffer.wrap(buf);
+	}
+
+	/**
+	 * Moves on to the next line, reading more input if the buffer has no complete
+	 * line left. The line's bytes, without the terminator, are then
+	 * {@link #length()} bytes of {@link #buffer()} starting at {@link #start()},
+	 * valid until the next call.
+	 *
+	 * @return true if there is a next line, false at the end of the input
+	 * @throws IOException if the input cannot be read
+	 */
+	public boolean next() throws IOException {
+		int scanned = pos;
+		int bits = 0;
+		while (true) {
+			if (skipLF && pos < limit) {
+				skipLF = false;
+				if (buf[pos] == '\n') {
+					scanned = ++pos;
+				}
+			}
+			for (int i = scanned; i < limit; i++) {
+				byte b = buf[i];
+				if (b == '\n' || b == '\r') {
+					start = pos;
+					length = i - pos;
+					ascii = bits >= 0;
+					skipLF = b == '\r';
+					pos = i + 1;
+					return true;
+				}
+				// a byte with the high bit set is negative, so this goes negative as soon
+				// as the line has a non-ASCII byte
+				bits |= b;
+			}
+			scanned = limit;
+			if (eof || !fill()) {
+				if (pos == limit) {
+					return false;
+				}
+				// the last line has no terminator
+				start = pos;
+				length = limit - pos;
+				ascii = bits >= 0;
+				pos = limit;
+				return true;
+			}
+			// fill() moved the unfinished line to the front of the buffer
+			scanned -= start;
+		}
+	}
+
+	/**
+	 * Reads more input after what is in the buffer, first moving the unfinished
+	 * line to the front, or growing the buffer if that line fills all of it.
+	 *
+	 * @return true if more bytes were read, false at the end of the input
+	 * @throws IOException if the input cannot be read
+	 */
+	private boolean fill() throws IOException {
+		// start records how far the unfinished line moved, for next() to adjust by
+		start = pos;
+		if (pos > 0) {
+			System.arraycopy(buf, pos, buf, 0, limit - pos);
+			limit -= pos;
+			pos = 0;
+		} else if (limit == buf.length) {
+			buf = Arrays.copyOf(buf, buf.length * 2);
+			wrapped = ByteBuffer.wrap(buf);
+		}
+		wrapped.limit(buf.length).position(limit);
+		int n;
+		if (file != null) {
+			wrapped.limit((int) Math.min(buf.length, limit + (fileEnd - filePos)));
+			n = wrapped.hasRemaining() ? file.read(wrapped, filePos) : -1;
+			if (n > 0) {
+				filePos += n;
+			}
+		} else {
+			do {
+				n = in.read(wrapped);
+			} while (n == 0);
+		}
+		if (n < 0) {
+			eof = true;
+			return false;
+		}
+		limit += n;
+		return true;
+	}
+
+	/**
+	 * @return the next line as a String, or null at the end of the input
+	 * @throws IOException if the input cannot be read
+	 */
+	public String readLine() throws IOException {
+		return next() ? line() : null;
+	}
+
+	/**
+	 * @return the line {@link #next()} moved to, as a String
+	 */
+	public String line() {
+		if (ascii || latin1) {
+			// every byte is one char, which is a plain copy into a compact String
+			return new String(buf, start, length, StandardCharsets.ISO_8859_1);
+		}
+		return new String(buf, start, length, charset);
+	}
+
+	/**
+	 * @return the buffer holding the current line
+	 */
+	public byte[] buffer() {
+		return buf;
+	}
+
+	/**
+	 * @return index in {@link #buffer()} where the current line starts
+	 */
+	public int start() {
+		return start;
+	}
+
+	/**
+	 * @return length in bytes of the current line
+	 */
+	public int length() {
+		return length;
+	}
+
+	/**
+	 * Closes the channel or stream being read. A reader of a file region leaves the
+	 * file open for whoever shares it.
+	 */
+	@Override
+	public void close() throws IOException {
+		if (in != null) {
+			in.close();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Scanner;
+
+/**
+ * Splits raw file bytes into lines and writes each one to a {@link Pipe} as a
+ * byte slice, without decoding it. Lines end only at \n, \r\n or \r, the same
+ * as for {@link LineReader}, so unlike {@link Scanner#nextLine()} a U+0085,
+ * U+2028 or U+2029 stays inside the line. The bytes arrive a buffer at a time,
+ * and a line or a \r\n that runs across two buffers is put back together.
+ *
+ * This is the counterpart of {@link LineReader} for bytes that are already in
+ * memory, such as a memory-mapped window of a file, which it scans in place
+ * instead of copying into a buffer of its own.
+ *
+ * @author cs131a
+ *
+ */
+class LineSplitter {
+
+	/**
+	 * where the lines are written
+	 */
+	private final Pipe out;
+
+	/**
+	 * the start of a line that ran past the end of the last buffer, waiting for
+	 * the rest of it
+	 */
+	private byte[] carry = new byte[256];
+
+	/**
+	 * number of bytes of carry in use
+	 */
+	private int carryLen;
+
+	/**
+	 * true if the last line terminator was \r, so a \n right after it is part of
+	 * the same terminator even if it is in the next buffer
+	 */
+	private boolean skipLF;
+
+	/**
+	 * Constructs a splitter.
+	 *
+	 * @param out where the lines are written
+	 */
+	LineSplitter(Pipe out) {
+		this.out = out;
+	}
+
+	/**
+	 * Splits the first n bytes of a buffer into lines and writes each complete one.
+	 * A line that runs past the end of the buffer is kept until the rest of it
+	 * arrives with the next call, or until {@link #end()}. Indexes are absolute, so
+	 * the buffer's position does not matter.
+	 *
+	 * @param buf buffer holding the next bytes of the file
+	 * @param n   number of bytes of buf to split
+	 * @throws InterruptedException if interrupted while writing to the pipe
+	 */
+	void split(ByteBuffer buf, int n) throws InterruptedException {
+		int start = 0;
+		for (int i = 0; i < n; i++) {
+			byte b = buf.get(i);
+			if (b != '\n' && b != '\r') {
+				continue;
+			}
+			if (skipLF) {
+				skipLF = false;
+				if (b == '\n' && i == start) {
+					start = i + 1;
+					continue;
+				}
+			}
+			if (carryLen == 0) {
+				out.put(buf, start, i - start);
+			} else {
+				carry = append(carry, carryLen, buf, start, i - start);
+				out.put(carry, 0, carryLen + i - start);
+				carryLen = 0;
+			}
+			skipLF = b == '\r';
+			start = i + 1;
+		}
+		if (start < n) {
+			skipLF = false;
+			carry = append(carry, carryLen, buf, start, n - start);
+			carryLen += n - start;
+		}
+	}
+
+	/**
+	 * Writes the last line if the bytes did not end with a line terminator.
+	 *
+	 * @throws InterruptedException if interrupted while writing to the pipe
+	 */
+	void end() throws InterruptedException {
+		if (carryLen > 0) {
+			out.put(carry, 0, carryLen);
+			carryLen = 0;
+		}
+	}
+
+	/**
+	 * Appends bytes to a buffer, growing it if they do not fit.
+	 *
+	 * @param dest    the buffer
+	 * @param destLen number of bytes of dest in use
+	 * @param src     buffer holding the bytes to append
+	 * @param off     index of the bytes in src
+	 * @param len     number of bytes to append
+	 * @return dest, or a larger copy of it if it had to grow
+	 */
+	private static byte[] append(byte[] dest, int destLen, ByteBuffer src, int off, int len) {
+		if (destLen + len > dest.length) {
+			dest = Arrays.copyOf(dest, Math.max(destLen + len, dest.length * 2));
+		}
+		src.get(off, dest, destLen, len);
+		return dest;
+	}
+}
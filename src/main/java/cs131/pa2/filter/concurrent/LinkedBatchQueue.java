@@ -0,0 +1,44 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@link BatchQueue} backed by a {@link LinkedBlockingQueue}. This is the
+ * default transport; it has no limit of its own and relies on the
+ * {@link Pipe}'s capacity to stay bounded.
+ *
+ * @author cs131a
+ *
+ */
+class LinkedBatchQueue implements BatchQueue {
+
+	/**
+	 * the underlying queue
+	 */
+	private final LinkedBlockingQueue<LineBatch> queue = new LinkedBlockingQueue<LineBatch>();
+
+	@Override
+	public void put(LineBatch batch) throws InterruptedException {
+		queue.put(batch);
+	}
+
+	@Override
+	public LineBatch take() throws InterruptedException {
+		return queue.take();
+	}
+
+	@Override
+	public LineBatch poll() {
+		return queue.poll();
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return queue.isEmpty();
+	}
+
+	@Override
+	public void clear() {
+		queue.clear();
+	}
+}
@@ -49,10 +49,6 @@ public class ListFilter extends ConcurrentFilter {
 		for (File f : files) {
 			this.output.put(f.getName());
 		}
-		//System.out.println(PoisonPill);
-		output.put(PoisonPill);
-		
-		
 	}
 
 	/**
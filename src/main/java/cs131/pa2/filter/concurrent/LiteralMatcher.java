@@ -0,0 +1,156 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Finds a fixed string in lines, prepared once for the string so that every
+ * line is searched without any setup of its own. Lines can be Strings or UTF-8
+ * byte slices, and both give the same answer since UTF-8 never encodes one
+ * character as part of another.
+ *
+ * String lines are left to {@link String#indexOf(String)}, which the JIT
+ * replaces with vector instructions that GrepBenchmarks could not beat for any
+ * length of string. For byte lines it depends on the length of the string. A
+ * short string is found by probing for its first byte and comparing the rest
+ * where it turns up, which is hard to beat when there is little to skip. From
+ * {@link #SKIP_TABLE_MIN} bytes on, Boyer-Moore-Horspool is used instead: the
+ * last byte of each window is looked up in a table that says how far the string
+ * can move without missing a match, so most of a long line is never looked at.
+ *
+ * @author cs131a
+ *
+ */
+final class LiteralMatcher implements LineMatcher {
+
+	/**
+	 * shortest string in bytes searched with the skip table, can be set with the
+	 * pa2.grep.skipTableMin system property. Below this the skips are too short to
+	 * pay for the table lookups
+	 */
+	static final int SKIP_TABLE_MIN = Integer.getInteger("pa2.grep.skipTableMin", 16);
+
+	/**
+	 * the string to find
+	 */
+	private final String needle;
+
+	/**
+	 * the string to find encoded as UTF-8
+	 */
+	private final byte[] bytes;
+
+	/**
+	 * how far to move the string when the last byte of the window is the index, or
+	 * null if the string is too short to use it
+	 */
+	private final int[] byteSkip;
+
+	/**
+	 * Prepares a search for a string.
+	 *
+	 * @param needle the string to find
+	 */
+	LiteralMatcher(String needle) {
+		this.needle = needle;
+		bytes = needle.getBytes(StandardCharsets.UTF_8);
+		if (bytes.length >= SKIP_TABLE_MIN) {
+			byteSkip = new int[256];
+			Arrays.fill(byteSkip, bytes.length);
+			for (int k = 0; k < bytes.length - 1; k++) {
+				byteSkip[bytes[k] & 0xff] = bytes.length - 1 - k;
+			}
+		} else {
+			byteSkip = null;
+		}
+	}
+
+	/**
+	 * @param line the line to search
+	 * @return true if the string occurs in the line
+	 */
+	@Override
+	public boolean matches(String line) {
+		return indexOf(line) >= 0;
+	}
+
+	/**
+	 * @param data buffer holding the line
+	 * @param off  offset of the line in data
+	 * @param len  length of the line in bytes
+	 * @return true if the string occurs in the line
+	 */
+	@Override
+	public boolean matches(byte[] data, int off, int len) {
+		return indexOf(data, off, len) >= 0;
+	}
+
+	/**
+	 * Finds the first occurrence of the string in a line.
+	 *
+	 * @param line the line to search
+	 * @return index in the line where the string starts, or -1 if it does not
+	 *         occur
+	 */
+	int indexOf(String line) {
+		return line.indexOf(needle);
+	}
+
+	/**
+	 * Finds the first occurrence of the string in a slice of a byte array.
+	 *
+	 * @param data buffer holding the slice to search
+	 * @param off  offset of the slice in data
+	 * @param len  length of the slice
+	 * @return index in data where the string starts, or -1 if it does not occur
+	 */
+	int indexOf(byte[] data, int off, int len) {
+		if (byteSkip == null) {
+			return indexOf(data, off, len, bytes);
+		}
+		int n = bytes.length;
+		int last = n - 1;
+		byte lastByte = bytes[last];
+		int max = off + len - n;
+		int i = off;
+		while (i <= max) {
+			byte b = data[i + last];
+			if (b == lastByte && Arrays.equals(data, i, i + last, bytes, 0, last)) {
+				return i;
+			}
+			i += byteSkip[b & 0xff];
+		}
+		return -1;
+	}
+
+	/**
+	 * Finds the first occurrence of needle in a slice of a byte array.
+	 *
+	 * @param data   buffer holding the slice to search
+	 * @param off    offset of the slice in data
+	 * @param len    length of the slice
+	 * @param needle bytes to look for
+	 * @return index in data where needle starts, or -1 if it does not occur
+	 */
+	static int indexOf(byte[] data, int off, int len, byte[] needle) {
+		if (needle.length == 0) {
+			return off;
+		}
+		byte first = needle[0];
+		int max = off + len - needle.length;
+		for (int i = off; i <= max; i++) {
+			// skip ahead to the next possible start before comparing the rest
+			if (data[i] != first) {
+				continue;
+			}
+			int j = 1;
+			while (j < needle.length && data[i + j] == needle[j]) {
+				j++;
+			}
+			if (j == needle.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
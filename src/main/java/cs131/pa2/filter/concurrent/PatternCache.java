@@ -0,0 +1,112 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * The regular expressions {@link GrepFilter} has compiled recently, shared by
+ * every command, so a script that runs the same grep -E over and over compiles
+ * its pattern once. A {@link Pattern} is immutable and safe to share between
+ * threads, each grep only needs a {@link java.util.regex.Matcher} of its own.
+ *
+ * At most {@link #CAPACITY} patterns are kept, the least recently used one is
+ * dropped to make room for a new one.
+ *
+ * @author cs131a
+ *
+ */
+final class PatternCache {
+
+	/**
+	 * most patterns kept, can be set with the pa2.grep.patternCache system
+	 * property, 0 turns the cache off
+	 */
+	static final int CAPACITY = Integer.getInteger("pa2.grep.patternCache", 256);
+
+	/**
+	 * characters that mean something in a regular expression outside of a
+	 * character class
+	 */
+	private static final String METACHARACTERS = ".$^|?*+()[]{}\\";
+
+	/**
+	 * the patterns by their source, least recently used first
+	 */
+	private static final LinkedHashMap<String, Pattern> patterns = new LinkedHashMap<String, Pattern>(16, 0.75f,
+			true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Pattern> eldest) {
+			return size() > CAPACITY;
+		}
+	};
+
+	private PatternCache() {
+	}
+
+	/**
+	 * Finds the compiled pattern for a regular expression, compiling and caching it
+	 * if it is not cached yet.
+	 *
+	 * @param regex the regular expression
+	 * @return the compiled pattern
+	 * @throws java.util.regex.PatternSyntaxException if regex is not a valid
+	 *                                                regular expression
+	 */
+	static Pattern get(String regex) {
+		synchronized (patterns) {
+			Pattern pattern = patterns.get(regex);
+			if (pattern != null) {
+				return pattern;
+			}
+		}
+		// compiled outside the lock so a long pattern does not hold up other greps,
+		// two greps compiling the same pattern at once just both compile it
+		Pattern pattern = Pattern.compile(regex);
+		if (CAPACITY > 0) {
+			synchronized (patterns) {
+				patterns.put(regex, pattern);
+			}
+		}
+		return pattern;
+	}
+
+	/**
+	 * Finds out whether a regular expression only ever matches one fixed string,
+	 * which is the case when it has no metacharacters other than a backslash in
+	 * front of a punctuation character, such as 1\.5. Such a pattern is faster to
+	 * search for as a string.
+	 *
+	 * @param regex the regular expression
+	 * @return the string regex matches, or null if it is not a plain string
+	 */
+	static String literal(String regex) {
+		StringBuilder sb = new StringBuilder(regex.length());
+		for (int i = 0; i < regex.length(); i++) {
+			char c = regex.charAt(i);
+			if (c == '\\') {
+				// a backslash in front of a letter or digit is a class or a back
+				// reference, in front of anything else it is just that character
+				if (++i == regex.length() || Character.isLetterOrDigit(regex.charAt(i))) {
+					return null;
+				}
+				c = regex.charAt(i);
+			} else if (METACHARACTERS.indexOf(c) >= 0) {
+				return null;
+			}
+			sb.append(c);
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Drops every pattern.
+	 */
+	static void clear() {
+		synchronized (patterns) {
+			patterns.clear();
+		}
+	}
+}
@@ -0,0 +1,868 @@
+package cs131.pa2.filter.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The link between two {@link ConcurrentFilter} stages. Lines are written one
+ * at a time by the upstream filter and read one at a time by the downstream
+ * filter, but they travel between the two threads in {@link LineBatch}es so
+ * the underlying queue is only touched once per batch.
+ *
+ * A pipe has exactly one producer thread and one consumer thread. The batch
+ * being filled is only touched by the producer and the batch being drained is
+ * only touched by the consumer, so neither needs any locking of its own.
+ *
+ * A partially filled batch is sent downstream when it fills up, when
+ * {@link #flush()} is called, or when a line is written more than the flush
+ * interval after the batch was started, which keeps interactive commands
+ * responsive.
+ *
+ * The producer ends the stream with {@link #close()}, or with
+ * {@link #fail(Throwable)} if it could not finish. Either way the end travels
+ * in the last batch, so there is no sentinel line that real input could
+ * collide with. {@link #take()} blocks until a line or the end arrives and
+ * returns null at the end of the stream, or throws a {@link PipeException} if
+ * the producer failed.
+ *
+ * A pipe is bounded by a {@link PipeCapacity}. Once the lines in flight reach
+ * the capacity the producer blocks until the consumer picks up a batch, so a
+ * fast producer cannot fill the heap in front of a slow consumer. Time spent
+ * blocked this way is recorded, and a stall longer than the report threshold
+ * is written to stderr naming both ends of the pipe. If the consumer stops
+ * reading early it calls {@link #cancel()}, after which the producer's next
+ * flush throws a {@link CancellationException} instead of blocking forever.
+ *
+ * Batches travel over a {@link BatchQueue}, chosen with the pa2.pipe.transport
+ * system property: "queue" (the default) uses a {@link LinkedBatchQueue}, "ring"
+ * uses a lock-free {@link RingBatchQueue} that waits according to
+ * {@link WaitStrategy#DEFAULT}.
+ *
+ * Lines can also be written as UTF-8 byte slices with
+ * {@link #put(byte[], int, int)}. They are copied into a buffer shared by the
+ * whole batch and only turned into Strings if the consumer asks for one, so a
+ * consumer that works on bytes reads them with {@link #advance()},
+ * {@link #isBytes()}, {@link #data()}, {@link #start()} and {@link #length()}
+ * instead of {@link #take()}.
+ *
+ * A producer that only some lines are wanted from can give the pipe a
+ * {@link LineMatcher} with {@link #setFilter(LineMatcher)}. Lines it does not
+ * match are dropped by put() before they are copied into a batch, so they cost
+ * the producer one test and nothing else.
+ *
+ * @author cs131a
+ *
+ */
+public class Pipe {
+
+	/**
+	 * default number of lines per batch, can be set with the pa2.pipe.batchSize
+	 * system property
+	 */
+	public static final int DEFAULT_BATCH_SIZE = Integer.getInteger("pa2.pipe.batchSize", 256);
+
+	/**
+	 * default number of milliseconds a partially filled batch may wait before it
+	 * is flushed, can be set with the pa2.pipe.flushMillis system property
+	 */
+	public static final long DEFAULT_FLUSH_MILLIS = Long.getLong("pa2.pipe.flushMillis", 5);
+
+	/**
+	 * a stall on backpressure longer than this many milliseconds is reported on
+	 * stderr, can be set with the pa2.pipe.stallReportMillis system property, 0
+	 * turns reporting off
+	 */
+	public static final long STALL_REPORT_MILLIS = Long.getLong("pa2.pipe.stallReportMillis", 1000);
+
+	/**
+	 * true if pipes use a {@link RingBatchQueue} by default, set with
+	 * pa2.pipe.transport=ring
+	 */
+	private static final boolean USE_RING = "ring".equalsIgnoreCase(System.getProperty("pa2.pipe.transport", "queue"));
+
+	/**
+	 * number of lines the filter drops between looks at the clock to see if the
+	 * batch being filled has gone stale
+	 */
+	private static final int DROP_CHECK_INTERVAL = 256;
+
+	/**
+	 * batches that have been flushed by the producer but not yet read by the
+	 * consumer
+	 */
+	private final BatchQueue queue;
+
+	/**
+	 * maximum number of lines per batch
+	 */
+	private final int batchSize;
+
+	/**
+	 * flush interval in nanoseconds
+	 */
+	private final long flushNanos;
+
+	/**
+	 * bound on the lines or bytes in flight
+	 */
+	private final PipeCapacity capacity;
+
+	/**
+	 * credits for the lines or bytes that may still be flushed before the
+	 * producer has to wait, one permit per line or byte
+	 */
+	private final Semaphore credits;
+
+	/**
+	 * total number of permits credits started with
+	 */
+	private final int permits;
+
+	/**
+	 * set by the consumer once it will not read any more lines
+	 */
+	private volatile boolean cancelled;
+
+	/**
+	 * names of the filters on either end, used when reporting stalls
+	 */
+	private String producerName = "producer", consumerName = "consumer";
+
+	/**
+	 * number of times the producer had to wait for capacity
+	 */
+	private volatile long stallCount;
+
+	/**
+	 * total nanoseconds the producer spent waiting for capacity, not counting a
+	 * wait still in progress
+	 */
+	private volatile long stallNanos;
+
+	/**
+	 * number of lines and estimated bytes the producer has handed over, counted a
+	 * batch at a time
+	 */
+	private volatile long linesWritten, bytesWritten;
+
+	/**
+	 * number of lines and estimated bytes the consumer has picked up, counted a
+	 * batch at a time
+	 */
+	private volatile long linesRead, bytesRead;
+
+	/**
+	 * total nanoseconds the consumer spent waiting for a batch, not counting a
+	 * wait still in progress
+	 */
+	private volatile long waitNanos;
+
+	/**
+	 * System.nanoTime() when the consumer started the wait it is in now, 0 if it
+	 * is not waiting, so a consumer blocked for a long time shows as waiting
+	 * before the wait is over
+	 */
+	private volatile long waitStartNanos;
+
+	/**
+	 * System.nanoTime() when the producer started waiting for capacity, 0 if it is
+	 * not waiting
+	 */
+	private volatile long stallStartNanos;
+
+	/**
+	 * lines or bytes in flight, sampled each time the producer hands over a batch:
+	 * the sum and number of samples and the largest sample
+	 */
+	private volatile long depthSum, depthSamples, depthMax;
+
+	/**
+	 * batch currently being filled - producer side only
+	 */
+	private LineBatch writeBatch;
+
+	/**
+	 * test a line must pass to be written, null to write every line - producer
+	 * side only
+	 */
+	private LineMatcher filter;
+
+	/**
+	 * copy of a line from a buffer without an array, for the filter to test -
+	 * producer side only
+	 */
+	private byte[] scratch;
+
+	/**
+	 * lines the filter dropped since the batch's age was last checked - producer
+	 * side only
+	 */
+	private int droppedUnchecked;
+
+	/**
+	 * batch currently being drained - consumer side only
+	 */
+	private LineBatch readBatch;
+
+	/**
+	 * index of the next line to read from readBatch - consumer side only
+	 */
+	private int readIdx;
+
+	/**
+	 * true once the consumer has picked up the last batch - consumer side only
+	 */
+	private boolean ended;
+
+	/**
+	 * failure carried by the last batch, if any - consumer side only
+	 */
+	private Throwable error;
+
+	/**
+	 * Constructs a pipe with the default batch size, flush interval and capacity.
+	 */
+	public Pipe() {
+		this(PipeCapacity.DEFAULT);
+	}
+
+	/**
+	 * Constructs a pipe with the default batch size and flush interval.
+	 *
+	 * @param capacity bound on the lines or bytes in flight
+	 */
+	public Pipe(PipeCapacity capacity) {
+		this(DEFAULT_BATCH_SIZE, DEFAULT_FLUSH_MILLIS, capacity);
+	}
+
+	/**
+	 * Constructs a pipe with the given batch size, flush interval and capacity.
+	 *
+	 * @param batchSize   maximum number of lines per batch, a batch size of 1
+	 *                    hands over every line as soon as it is written
+	 * @param flushMillis maximum age in milliseconds of a partially filled batch
+	 *                    before it is flushed on the next write
+	 * @param capacity    bound on the lines or bytes in flight
+	 * @throws IllegalArgumentException if batchSize is not positive or
+	 *                                  flushMillis is negative
+	 */
+	public Pipe(int batchSize, long flushMillis, PipeCapacity capacity) {
+		this(batchSize, flushMillis, capacity, USE_RING ? new RingBatchQueue() : new LinkedBatchQueue());
+	}
+
+	/**
+	 * Constructs a pipe over the given transport.
+	 *
+	 * @param batchSize   maximum number of lines per batch
+	 * @param flushMillis maximum age in milliseconds of a partially filled batch
+	 * @param capacity    bound on the lines or bytes in flight
+	 * @param queue       the transport batches travel over
+	 */
+	Pipe(int batchSize, long flushMillis, PipeCapacity capacity, BatchQueue queue) {
+		if (batchSize < 1 || flushMillis < 0) {
+			throw new IllegalArgumentException("Invalid pipe configuration: batch size " + batchSize
+					+ ", flush interval " + flushMillis + "ms");
+		}
+		this.batchSize = batchSize;
+		this.flushNanos = TimeUnit.MILLISECONDS.toNanos(flushMillis);
+		this.capacity = capacity;
+		permits = (int) Math.min(capacity.getLimit(), Integer.MAX_VALUE);
+		credits = new Semaphore(permits);
+		this.queue = queue;
+	}
+
+	/**
+	 * Records the names of the filters on either end of this pipe for stall
+	 * reports.
+	 *
+	 * @param producer name of the upstream filter
+	 * @param consumer name of the downstream filter
+	 */
+	void setEndpoints(String producer, String consumer) {
+		producerName = producer;
+		consumerName = consumer;
+	}
+
+	/**
+	 * Writes a line into the pipe. Called only by the producer.
+	 *
+	 * @param line the line to write
+	 * @throws InterruptedException  if interrupted while handing over a batch
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	public void put(String line) throws InterruptedException {
+		if (filter != null && !filter.matches(line)) {
+			dropped();
+			return;
+		}
+		if (writeBatch == null) {
+			writeBatch = new LineBatch(batchSize);
+		}
+		writeBatch.add(line);
+		added();
+	}
+
+	/**
+	 * Writes a line held as UTF-8 bytes into the pipe. The bytes are copied, so the
+	 * caller may reuse src as soon as this returns. Called only by the producer.
+	 *
+	 * @param src buffer holding the line
+	 * @param off offset of the line in src
+	 * @param len length of the line in bytes, without its terminator
+	 * @throws InterruptedException  if interrupted while handing over a batch
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	public void put(byte[] src, int off, int len) throws InterruptedException {
+		if (filter != null && !filter.matches(src, off, len)) {
+			dropped();
+			return;
+		}
+		if (writeBatch == null) {
+			writeBatch = new LineBatch(batchSize);
+		}
+		writeBatch.add(src, off, len);
+		added();
+	}
+
+	/**
+	 * Writes a line held as UTF-8 bytes in a buffer into the pipe. The bytes are
+	 * copied and the buffer's position is left alone. Called only by the producer.
+	 *
+	 * @param src buffer holding the line, for example a memory-mapped file
+	 * @param off index of the line in src
+	 * @param len length of the line in bytes, without its terminator
+	 * @throws InterruptedException  if interrupted while handing over a batch
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	public void put(ByteBuffer src, int off, int len) throws InterruptedException {
+		if (filter != null && !matches(src, off, len)) {
+			dropped();
+			return;
+		}
+		if (writeBatch == null) {
+			writeBatch = new LineBatch(batchSize);
+		}
+		writeBatch.add(src, off, len);
+		added();
+	}
+
+	/**
+	 * Runs the filter on a line held in a buffer. A direct buffer, such as a
+	 * memory-mapped file, has no array to test in place, so the line is copied
+	 * into a scratch array that is reused for every line.
+	 *
+	 * @param src buffer holding the line
+	 * @param off index of the line in src
+	 * @param len length of the line in bytes
+	 * @return true if the filter matches the line
+	 */
+	private boolean matches(ByteBuffer src, int off, int len) {
+		if (src.hasArray()) {
+			return filter.matches(src.array(), src.arrayOffset() + off, len);
+		}
+		if (scratch == null || scratch.length < len) {
+			scratch = new byte[Math.max(len, 8192)];
+		}
+		src.get(off, scratch, 0, len);
+		return filter.matches(scratch, 0, len);
+	}
+
+	/**
+	 * Called for each line the filter drops. The lines that did match must still go
+	 * out once the batch is stale, or they would wait for the next match or the end
+	 * of the input. Reading the clock for every dropped line slowed a selective
+	 * grep down by a third, so it is only read every {@link #DROP_CHECK_INTERVAL}
+	 * lines, which a reader gets through in microseconds. A producer that has to
+	 * wait for more input, like cat -f, flushes on its own. The same check notices a
+	 * consumer that stopped reading, which a producer dropping nearly every line
+	 * would otherwise only find out about at its next flush, long after the rest of
+	 * the pipeline is done.
+	 *
+	 * @throws InterruptedException  if interrupted while handing over the batch
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	private void dropped() throws InterruptedException {
+		if (++droppedUnchecked >= DROP_CHECK_INTERVAL) {
+			droppedUnchecked = 0;
+			if (cancelled) {
+				writeBatch = null;
+				throw new CancellationException(consumerName + " stopped reading from " + producerName);
+			}
+			flushIfStale();
+		}
+	}
+
+	/**
+	 * Makes put() drop the lines a test does not match. A dropped line still
+	 * flushes the lines before it once they are older than the flush interval.
+	 * Must be called by the producer, or before the producer starts.
+	 *
+	 * @param filter the test lines must pass to be written, null to write every
+	 *               line
+	 */
+	void setFilter(LineMatcher filter) {
+		this.filter = filter;
+	}
+
+	/**
+	 * @return the test lines must pass to be written, null if every line is
+	 *         written
+	 */
+	LineMatcher getFilter() {
+		return filter;
+	}
+
+	/**
+	 * Flushes the batch being filled if a line just added filled it or made it
+	 * stale.
+	 *
+	 * @throws InterruptedException  if interrupted while handing over a batch
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	private void added() throws InterruptedException {
+		// hand the batch over once it is full, or once it has been sitting around for
+		// longer than the flush interval so a slow trickle of lines still shows up
+		// downstream promptly
+		if (writeBatch.isFull() || System.nanoTime() - writeBatch.createdNanos >= flushNanos) {
+			flush();
+		}
+	}
+
+	/**
+	 * Hands the partially filled batch (if any) over to the consumer, waiting for
+	 * capacity if the pipe is full. Called only by the producer.
+	 *
+	 * @throws InterruptedException  if interrupted while waiting for capacity
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	public void flush() throws InterruptedException {
+		if (cancelled) {
+			writeBatch = null;
+			throw new CancellationException(consumerName + " stopped reading from " + producerName);
+		}
+		if (writeBatch != null && (writeBatch.size > 0 || writeBatch.last)) {
+			sampleDepth();
+			// a batch larger than the whole capacity takes all of it rather than waiting
+			// forever for credits that can never exist
+			writeBatch.cost = (int) Math.min(capacity.costOf(writeBatch), permits);
+			if (!credits.tryAcquire(writeBatch.cost)) {
+				awaitCapacity(writeBatch.cost);
+			}
+			if (cancelled) {
+				writeBatch = null;
+				throw new CancellationException(consumerName + " stopped reading from " + producerName);
+			}
+			queue.put(writeBatch);
+			linesWritten += writeBatch.size;
+			bytesWritten += writeBatch.bytes;
+		}
+		writeBatch = null;
+	}
+
+	/**
+	 * Records how much is in flight, taken from the credits in use so sampling
+	 * costs nothing beyond reading the semaphore.
+	 */
+	private void sampleDepth() {
+		long depth = Math.max(0, permits - credits.availablePermits());
+		depthSum += depth;
+		depthSamples++;
+		if (depth > depthMax) {
+			depthMax = depth;
+		}
+	}
+
+	/**
+	 * Blocks the producer until cost credits are available, recording how long it
+	 * waited and reporting the stall if it waits longer than
+	 * {@link #STALL_REPORT_MILLIS}.
+	 *
+	 * @param cost number of credits needed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void awaitCapacity(int cost) throws InterruptedException {
+		long start = System.nanoTime();
+		stallStartNanos = start;
+		try {
+			if (STALL_REPORT_MILLIS > 0) {
+				if (!credits.tryAcquire(cost, STALL_REPORT_MILLIS, TimeUnit.MILLISECONDS)) {
+					System.err.println(producerName + " is stalled on backpressure: " + consumerName
+							+ " has not drained " + capacity + " in " + STALL_REPORT_MILLIS + " ms");
+					credits.acquire(cost);
+				}
+			} else {
+				credits.acquire(cost);
+			}
+		} finally {
+			stallCount++;
+			// cleared first, so a snapshot taken in between never counts the wait twice
+			stallStartNanos = 0;
+			stallNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Ends the stream successfully after the lines already written. Called only by
+	 * the producer, which must not write to the pipe afterwards.
+	 *
+	 * @throws InterruptedException  if interrupted while waiting for capacity
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	public void close() throws InterruptedException {
+		end(null);
+	}
+
+	/**
+	 * Ends the stream because the producer could not finish. The consumer receives
+	 * the lines already written and then a {@link PipeException} with the given
+	 * cause. Called only by the producer, which must not write to the pipe
+	 * afterwards.
+	 *
+	 * @param cause why the producer stopped
+	 * @throws InterruptedException  if interrupted while waiting for capacity
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	public void fail(Throwable cause) throws InterruptedException {
+		end(cause == null ? new IllegalStateException("upstream filter failed") : cause);
+	}
+
+	/**
+	 * Marks the batch being filled as the last one and hands it over.
+	 *
+	 * @param cause why the producer stopped, or null if it finished
+	 * @throws InterruptedException  if interrupted while waiting for capacity
+	 * @throws CancellationException if the consumer has cancelled the pipe
+	 */
+	private void end(Throwable cause) throws InterruptedException {
+		if (writeBatch == null) {
+			writeBatch = new LineBatch(batchSize);
+		}
+		writeBatch.last = true;
+		writeBatch.error = cause;
+		flush();
+	}
+
+	/**
+	 * Moves the batches of this pipe, in order, to the end of target, without
+	 * copying their lines. Waits for batches that have not been handed over yet and
+	 * stops after the last one. Lets lines be split into a private pipe, ahead of
+	 * time or on another thread, and handed downstream as they come. Called as the
+	 * consumer of this pipe and the producer of target.
+	 *
+	 * @param target the pipe the batches are moved to
+	 * @throws InterruptedException  if interrupted while waiting for a batch or for
+	 *                               capacity in target
+	 * @throws CancellationException if target has been cancelled
+	 * @throws PipeException         if this pipe was ended with
+	 *                               {@link #fail(Throwable)}
+	 */
+	void transferTo(Pipe target) throws InterruptedException {
+		while (true) {
+			LineBatch batch = awaitBatch();
+			credits.release(batch.cost);
+			if (batch.error != null) {
+				throw new PipeException(batch.error);
+			}
+			boolean last = batch.last;
+			batch.last = false;
+			if (batch.size > 0) {
+				target.flush();
+				target.writeBatch = batch;
+				target.flush();
+			}
+			if (last) {
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Flushes the partially filled batch only if it is older than the flush
+	 * interval. Called only by the producer.
+	 *
+	 * @throws InterruptedException if interrupted while handing over the batch
+	 */
+	public void flushIfStale() throws InterruptedException {
+		if (writeBatch != null && System.nanoTime() - writeBatch.createdNanos >= flushNanos) {
+			flush();
+		}
+	}
+
+	/**
+	 * Reads the next line, waiting until the producer hands over a batch or ends
+	 * the stream. Called only by the consumer.
+	 *
+	 * @return the next line, or null once the stream has ended
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws PipeException        if the producer ended the stream with
+	 *                              {@link #fail(Throwable)}
+	 */
+	public String take() throws InterruptedException {
+		return advance() ? line() : null;
+	}
+
+	/**
+	 * Moves on to the next line, waiting until the producer hands over a batch or
+	 * ends the stream. The line can then be read with {@link #line()}, or as bytes
+	 * if {@link #isBytes()}. Called only by the consumer.
+	 *
+	 * @return true if there is a next line, false once the stream has ended
+	 * @throws InterruptedException if interrupted while waiting
+	 * @throws PipeException        if the producer ended the stream with
+	 *                              {@link #fail(Throwable)}
+	 */
+	public boolean advance() throws InterruptedException {
+		while (!hasBuffered()) {
+			if (ended) {
+				endOfStream();
+				return false;
+			}
+			pickUp(awaitBatch());
+		}
+		readIdx++;
+		return true;
+	}
+
+	/**
+	 * Takes the next batch off the queue, waiting for one if there is none and
+	 * recording how long that took. Called only by the consumer.
+	 *
+	 * @return the next batch
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private LineBatch awaitBatch() throws InterruptedException {
+		long start = System.nanoTime();
+		waitStartNanos = start;
+		try {
+			return queue.take();
+		} finally {
+			// cleared first, so a snapshot taken in between never counts the wait twice
+			waitStartNanos = 0;
+			waitNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Reads the next line if one is available without waiting. Called only by the
+	 * consumer.
+	 *
+	 * @return the next line, or null if none is available right now or the stream
+	 *         has ended - use {@link #isEnded()} to tell the two apart
+	 * @throws PipeException if the producer ended the stream with
+	 *                       {@link #fail(Throwable)}
+	 */
+	public String poll() {
+		while (!hasBuffered()) {
+			if (ended) {
+				endOfStream();
+				return null;
+			}
+			LineBatch next = queue.poll();
+			if (next == null) {
+				return null;
+			}
+			pickUp(next);
+		}
+		readIdx++;
+		return line();
+	}
+
+	/**
+	 * @return the line {@link #advance()} moved to, decoded if it was written as
+	 *         bytes
+	 */
+	public String line() {
+		return readBatch.line(readIdx - 1);
+	}
+
+	/**
+	 * @return true if the line {@link #advance()} moved to is held as UTF-8 bytes,
+	 *         in which case it is the {@link #length()} bytes of {@link #data()}
+	 *         starting at {@link #start()}
+	 */
+	public boolean isBytes() {
+		return readBatch.isBytes(readIdx - 1);
+	}
+
+	/**
+	 * @return the buffer holding the current byte line, only valid until the next
+	 *         call to {@link #advance()}
+	 */
+	public byte[] data() {
+		return readBatch.data;
+	}
+
+	/**
+	 * @return offset of the current byte line in {@link #data()}
+	 */
+	public int start() {
+		return readBatch.starts[readIdx - 1];
+	}
+
+	/**
+	 * @return length in bytes of the current byte line
+	 */
+	public int length() {
+		return readBatch.lengths[readIdx - 1];
+	}
+
+	/**
+	 * Called once every line has been read and the last batch has been seen.
+	 *
+	 * @throws PipeException if the producer failed
+	 */
+	private void endOfStream() {
+		if (error != null) {
+			throw new PipeException(error);
+		}
+	}
+
+	/**
+	 * @return true once every line has been read and the producer has ended the
+	 *         stream - consumer side only
+	 */
+	public boolean isEnded() {
+		return ended && !hasBuffered();
+	}
+
+	/**
+	 * Makes a batch taken off the queue the one being drained and gives its
+	 * credits back to the producer.
+	 *
+	 * @param batch the batch taken off the queue
+	 */
+	private void pickUp(LineBatch batch) {
+		readBatch = batch;
+		readIdx = 0;
+		credits.release(batch.cost);
+		linesRead += batch.size;
+		bytesRead += batch.bytes;
+		if (batch.last) {
+			ended = true;
+			error = batch.error;
+		}
+	}
+
+	/**
+	 * Tells the producer that the consumer will not read any more lines. Any
+	 * lines in flight are dropped and the producer's next flush throws a
+	 * {@link CancellationException}. Called only by the consumer.
+	 */
+	public void cancel() {
+		if (!cancelled) {
+			cancelled = true;
+			queue.clear();
+			// wake the producer if it is waiting for capacity, without pushing the
+			// semaphore past its maximum when the capacity is close to unbounded. Only
+			// the consumer releases credits, so the count cannot grow in between
+			credits.release(Math.min(permits, Integer.MAX_VALUE - credits.availablePermits()));
+		}
+	}
+
+	/**
+	 * @return true if the consumer has cancelled this pipe
+	 */
+	public boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * @return number of times the producer had to wait for capacity
+	 */
+	public long getStallCount() {
+		return stallCount;
+	}
+
+	/**
+	 * @return total milliseconds the producer spent waiting for capacity,
+	 *         including a wait still in progress
+	 */
+	public long getStallMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(stallNanos + since(stallStartNanos));
+	}
+
+	/**
+	 * @return number of lines the producer has handed over
+	 */
+	public long getLinesWritten() {
+		return linesWritten;
+	}
+
+	/**
+	 * @return estimated number of bytes the producer has handed over
+	 */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/**
+	 * @return number of lines the consumer has picked up
+	 */
+	public long getLinesRead() {
+		return linesRead;
+	}
+
+	/**
+	 * @return estimated number of bytes the consumer has picked up
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * @return total milliseconds the consumer spent waiting for a batch,
+	 *         including a wait still in progress
+	 */
+	public long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(waitNanos + since(waitStartNanos));
+	}
+
+	/**
+	 * @param startNanos System.nanoTime() when a wait started, or 0
+	 * @return nanoseconds since the wait started, 0 if there is no wait
+	 */
+	private static long since(long startNanos) {
+		return startNanos == 0 ? 0 : Math.max(0, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * @return average number of lines or bytes in flight, sampled whenever the
+	 *         producer hands over a batch
+	 */
+	public double getAverageDepth() {
+		long samples = depthSamples;
+		return samples == 0 ? 0 : (double) depthSum / samples;
+	}
+
+	/**
+	 * @return largest number of lines or bytes seen in flight
+	 */
+	public long getMaxDepth() {
+		return depthMax;
+	}
+
+	/**
+	 * @return the bound on the lines or bytes in flight
+	 */
+	public PipeCapacity getCapacity() {
+		return capacity;
+	}
+
+	/**
+	 * @return true if no line is available to the consumer right now, which
+	 *         includes the stream having ended
+	 */
+	public boolean isEmpty() {
+		return !hasBuffered() && queue.isEmpty();
+	}
+
+	/**
+	 * @return true if the consumer still has lines left in the batch it is
+	 *         draining, i.e. the next {@link #take()} will not touch the queue
+	 */
+	public boolean hasBuffered() {
+		return readBatch != null && readIdx < readBatch.size;
+	}
+}
@@ -0,0 +1,118 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.Locale;
+
+/**
+ * The most a {@link Pipe} may hold before its producer has to wait for the
+ * consumer to catch up. A capacity is either a number of lines or a number of
+ * bytes, where the size of a line is estimated from its length.
+ *
+ * @author cs131a
+ *
+ */
+public final class PipeCapacity {
+
+	/**
+	 * capacity used when none is specified, can be set with the
+	 * pa2.pipe.capacity system property using the syntax of {@link #parse(String)}
+	 */
+	public static final PipeCapacity DEFAULT = parse(System.getProperty("pa2.pipe.capacity", "16MB"));
+
+	/**
+	 * maximum number of lines or bytes
+	 */
+	private final long limit;
+
+	/**
+	 * true if limit counts bytes, false if it counts lines
+	 */
+	private final boolean bytes;
+
+	/**
+	 * Constructs a capacity.
+	 *
+	 * @param limit maximum number of lines or bytes
+	 * @param bytes true if limit counts bytes, false if it counts lines
+	 */
+	private PipeCapacity(long limit, boolean bytes) {
+		if (limit < 1) {
+			throw new IllegalArgumentException("Pipe capacity must be positive: " + limit);
+		}
+		this.limit = limit;
+		this.bytes = bytes;
+	}
+
+	/**
+	 * @param lines maximum number of lines
+	 * @return a capacity counted in lines
+	 */
+	public static PipeCapacity lines(long lines) {
+		return new PipeCapacity(lines, false);
+	}
+
+	/**
+	 * @param bytes maximum number of bytes
+	 * @return a capacity counted in bytes
+	 */
+	public static PipeCapacity bytes(long bytes) {
+		return new PipeCapacity(bytes, true);
+	}
+
+	/**
+	 * Parses a capacity. A plain number or a number followed by "lines" is a line
+	 * count, a number followed by B, KB, MB or GB is a byte size. For example
+	 * "10000", "10000 lines", "512KB" and "64MB".
+	 *
+	 * @param spec the capacity to parse
+	 * @return the parsed capacity
+	 * @throws IllegalArgumentException if spec cannot be parsed
+	 */
+	public static PipeCapacity parse(String spec) {
+		String s = spec.trim().toUpperCase(Locale.ROOT);
+		try {
+			if (s.endsWith("LINES")) {
+				return lines(Long.parseLong(s.substring(0, s.length() - 5).trim()));
+			} else if (s.endsWith("KB")) {
+				return bytes(Long.parseLong(s.substring(0, s.length() - 2).trim()) << 10);
+			} else if (s.endsWith("MB")) {
+				return bytes(Long.parseLong(s.substring(0, s.length() - 2).trim()) << 20);
+			} else if (s.endsWith("GB")) {
+				return bytes(Long.parseLong(s.substring(0, s.length() - 2).trim()) << 30);
+			} else if (s.endsWith("B")) {
+				return bytes(Long.parseLong(s.substring(0, s.length() - 1).trim()));
+			}
+			return lines(Long.parseLong(s));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Invalid pipe capacity: " + spec);
+		}
+	}
+
+	/**
+	 * @return maximum number of lines or bytes
+	 */
+	public long getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return true if this capacity counts bytes, false if it counts lines
+	 */
+	public boolean isBytes() {
+		return bytes;
+	}
+
+	/**
+	 * Returns the cost of a batch against this capacity.
+	 *
+	 * @param batch the batch
+	 * @return number of lines or estimated bytes in the batch
+	 */
+	long costOf(LineBatch batch) {
+		return bytes ? batch.bytes : batch.size;
+	}
+
+	@Override
+	public String toString() {
+		return bytes ? limit + "B" : limit + " lines";
+	}
+}
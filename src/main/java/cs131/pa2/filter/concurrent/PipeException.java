@@ -0,0 +1,24 @@
+package cs131.pa2.filter.concurrent;
+
+/**
+ * Thrown to the consumer of a {@link Pipe} when the producer ended the stream
+ * with {@link Pipe#fail(Throwable)} instead of {@link Pipe#close()}. The cause
+ * is the failure of the filter that first stopped, which is passed along
+ * unchanged through every later filter.
+ *
+ * @author cs131a
+ *
+ */
+public class PipeException extends RuntimeException {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Constructs a PipeException.
+	 *
+	 * @param cause the failure of the upstream filter
+	 */
+	public PipeException(Throwable cause) {
+		super(cause == null ? "upstream filter failed" : cause.getMessage(), cause);
+	}
+}
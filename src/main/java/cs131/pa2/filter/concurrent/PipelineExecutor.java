@@ -0,0 +1,154 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the filters of a command as a {@link Job}. Owned by
+ * {@link ConcurrentREPL}, which creates one per run of the shell and shuts it
+ * down on exit.
+ *
+ * In {@link ExecutionMode#POOLED} mode stages run on a pool of worker threads
+ * that are reused from one command to the next, so short commands do not pay
+ * for creating threads. The pool keeps its configured number of threads alive
+ * between commands but grows past it when more stages are running at once:
+ * every stage of a pipeline has to run at the same time for the pipes between
+ * them to drain, so a hard limit could deadlock. In the other modes every stage
+ * gets a new thread of the matching kind.
+ *
+ * Either way each stage runs under a thread name made of the job's command and
+ * the filter, so thread dumps show which command a thread is working for.
+ *
+ * @author cs131a
+ *
+ */
+public class PipelineExecutor {
+
+	/**
+	 * default number of worker threads kept alive by a pool, can be set with the
+	 * pa2.pool.size system property
+	 */
+	public static final int DEFAULT_POOL_SIZE = Integer.getInteger("pa2.pool.size",
+			Math.max(4, 2 * Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * seconds an idle worker beyond the pool size waits for work before exiting
+	 */
+	private static final long KEEP_ALIVE_SECONDS = 60;
+
+	/**
+	 * how stages are run
+	 */
+	private final ExecutionMode mode;
+
+	/**
+	 * the worker pool in POOLED mode, else null
+	 */
+	private final ThreadPoolExecutor pool;
+
+	/**
+	 * Constructs an executor with the default pool size.
+	 *
+	 * @param mode how stages are run
+	 */
+	public PipelineExecutor(ExecutionMode mode) {
+		this(mode, DEFAULT_POOL_SIZE);
+	}
+
+	/**
+	 * Constructs an executor.
+	 *
+	 * @param mode     how stages are run
+	 * @param poolSize number of worker threads kept alive in POOLED mode
+	 */
+	public PipelineExecutor(ExecutionMode mode, int poolSize) {
+		this.mode = mode;
+		if (mode == ExecutionMode.POOLED) {
+			pool = new ThreadPoolExecutor(poolSize, Integer.MAX_VALUE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+					new SynchronousQueue<Runnable>(), new WorkerFactory());
+			pool.prestartAllCoreThreads();
+		} else {
+			pool = null;
+		}
+	}
+
+	/**
+	 * Starts every filter of a command.
+	 *
+	 * @param filters the linked filters of the command
+	 * @param command the command, used to name the job and its stages
+	 * @return the started job
+	 */
+	public Job start(List<ConcurrentFilter> filters, String command) {
+		List<Future<?>> stages = new ArrayList<Future<?>>();
+		for (ConcurrentFilter filter : filters) {
+			String name = command.trim() + " [" + filter + "]";
+			FutureTask<Void> stage = new FutureTask<Void>(named(filter, name), null);
+			if (pool != null) {
+				pool.execute(stage);
+			} else {
+				mode.newThread(stage, name).start();
+			}
+			stages.add(stage);
+		}
+		return new Job(command, filters, stages);
+	}
+
+	/**
+	 * Stops accepting new jobs. Jobs already running finish normally and the pool's
+	 * threads exit once they are idle.
+	 */
+	public void shutdown() {
+		if (pool != null) {
+			pool.shutdown();
+		}
+	}
+
+	/**
+	 * Wraps a stage so it runs under the given thread name. Threads created for a
+	 * single stage already have the name, pool workers take it on for the length
+	 * of the stage and get their own name back afterwards.
+	 *
+	 * @param stage the filter to run
+	 * @param name  the thread name while the stage runs
+	 * @return the wrapped stage
+	 */
+	private Runnable named(Runnable stage, String name) {
+		if (pool == null) {
+			return stage;
+		}
+		return () -> {
+			Thread current = Thread.currentThread();
+			String workerName = current.getName();
+			current.setName(name);
+			try {
+				stage.run();
+			} finally {
+				current.setName(workerName);
+			}
+		};
+	}
+
+	/**
+	 * Creates the pool's worker threads.
+	 */
+	private static class WorkerFactory implements ThreadFactory {
+
+		/**
+		 * number of workers created so far, used to number their names
+		 */
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable r) {
+			return new Thread(r, "pipeline-worker-" + count.incrementAndGet());
+		}
+	}
+}
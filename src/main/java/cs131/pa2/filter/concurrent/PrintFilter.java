@@ -1,5 +1,7 @@
 package cs131.pa2.filter.concurrent;
 
+import java.io.PrintStream;
+
 /**
  * Implements printing as a {@link ConcurrentFilter} - overrides necessary
  * behavior of SequentialFilter
@@ -20,6 +22,22 @@ public class PrintFilter extends ConcurrentFilter {
 		return null;
 	}
 
+	/**
+	 * Overrides {@link ConcurrentFilter#processBytes(byte[], int, int)} to write a
+	 * byte line straight to stdout without decoding it.
+	 */
+	@Override
+	protected Boolean processBytes(byte[] data, int off, int len) {
+		PrintStream out = System.out;
+		// hold the stream's lock so the line and its terminator are not split up by
+		// output from another pipeline
+		synchronized (out) {
+			out.write(data, off, len);
+			out.println();
+		}
+		return false;
+	}
+
 //	@Override
 //	public void run() {
 //		// TODO Auto-generated method stub
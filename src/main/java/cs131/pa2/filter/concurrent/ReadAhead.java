@@ -0,0 +1,123 @@
+package cs131.pa2.filter.concurrent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a file for {@link CatFilter} in {@link ReadMode#ASYNC} mode. The file
+ * is read in blocks of {@link ReadMode#READ_AHEAD_SIZE} bytes through an
+ * {@link AsynchronousFileChannel} into {@link ReadMode#READ_AHEAD_DEPTH}
+ * buffers that take turns: while the oldest block is split into lines, the
+ * reads of the blocks after it are already in flight, and the buffer is handed
+ * back to read the next block as soon as it has been split. Waiting for the
+ * disk then overlaps with pushing lines downstream instead of alternating with
+ * it.
+ *
+ * @author cs131a
+ *
+ */
+class ReadAhead {
+
+	/**
+	 * the file being read
+	 */
+	private final Path path;
+
+	/**
+	 * where the lines are written
+	 */
+	private final Pipe output;
+
+	/**
+	 * Constructs a reader for a file.
+	 *
+	 * @param path   the file
+	 * @param output where the lines are written
+	 */
+	ReadAhead(Path path, Pipe output) {
+		this.path = path;
+		this.output = output;
+	}
+
+	/**
+	 * Reads the whole file into the output. Reads still in flight are abandoned
+	 * when the channel is closed if this stops early.
+	 *
+	 * @throws IOException          if the file cannot be read
+	 * @throws InterruptedException if interrupted while waiting for a block or for
+	 *                              room in the output
+	 */
+	void read() throws IOException, InterruptedException {
+		try (AsynchronousFileChannel channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ)) {
+			long size = channel.size();
+			int depth = ReadMode.READ_AHEAD_DEPTH;
+			ByteBuffer[] buffers = new ByteBuffer[depth];
+			long[] offsets = new long[depth];
+			// the read in flight into each buffer, null once there is nothing left to read
+			List<Future<Integer>> reads = new ArrayList<Future<Integer>>(Collections.nCopies(depth, null));
+			// offset of the next block to start reading
+			long next = 0;
+			for (int i = 0; i < depth && next < size; i++) {
+				// direct, so the channel reads into them without a copy of its own
+				buffers[i] = ByteBuffer.allocateDirect((int) Math.min(ReadMode.READ_AHEAD_SIZE, size));
+				offsets[i] = next;
+				reads.set(i, channel.read(buffers[i], next));
+				next += buffers[i].capacity();
+			}
+			LineSplitter splitter = new LineSplitter(output);
+			for (int slot = 0; reads.get(slot) != null; slot = (slot + 1) % depth) {
+				ByteBuffer buf = buffers[slot];
+				int expected = (int) Math.min(buf.capacity(), size - offsets[slot]);
+				int n = await(reads.get(slot));
+				// a read may stop short of the block, the rest is read before it is split
+				while (n >= 0 && buf.position() < expected) {
+					n = await(channel.read(buf, offsets[slot] + buf.position()));
+				}
+				splitter.split(buf, buf.position());
+				if (n < 0) {
+					// the file shrank while it was read
+					break;
+				}
+				buf.clear();
+				if (next < size) {
+					offsets[slot] = next;
+					reads.set(slot, channel.read(buf, next));
+					next += buf.capacity();
+				} else {
+					reads.set(slot, null);
+				}
+			}
+			splitter.end();
+		}
+	}
+
+	/**
+	 * Waits for a read and passes on any failure.
+	 *
+	 * @param read the read
+	 * @return number of bytes read, -1 at the end of the file
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private static int await(Future<Integer> read) throws InterruptedException {
+		try {
+			return read.get();
+		} catch (ExecutionException e) {
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException) {
+				throw new UncheckedIOException((IOException) cause);
+			} else if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+}
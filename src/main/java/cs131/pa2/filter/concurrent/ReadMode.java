@@ -0,0 +1,128 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.Locale;
+
+/**
+ * How {@link CatFilter} reads a file when lines are passed on as bytes. Set
+ * with the pa2.cat.read system property.
+ *
+ * @author cs131a
+ *
+ */
+public enum ReadMode {
+	/**
+	 * read files of at least {@link #PARALLEL_THRESHOLD} bytes in parallel if
+	 * there is more than one core, memory-map files of at least
+	 * {@link #MAP_THRESHOLD} bytes and read smaller ones into a buffer
+	 */
+	AUTO,
+	/**
+	 * read the file into a reusable buffer with ordinary reads
+	 */
+	BUFFERED,
+	/**
+	 * memory-map the file, a window of {@link #MAP_WINDOW} bytes at a time, and
+	 * scan for line ends directly in the mapping
+	 */
+	MAPPED,
+	/**
+	 * split the file into chunks of {@link #CHUNK_SIZE} bytes at line boundaries
+	 * and split each chunk into lines on one of {@link #READERS} threads, then pass
+	 * the lines on in their original order
+	 */
+	PARALLEL,
+	/**
+	 * read the file with an asynchronous channel into {@link #READ_AHEAD_DEPTH}
+	 * rotating buffers of {@link #READ_AHEAD_SIZE} bytes, so the next blocks are
+	 * already being read while one is split into lines, which pays off when every
+	 * read has to wait for a slow or remote disk
+	 */
+	ASYNC;
+
+	/**
+	 * the mode used when none is specified
+	 */
+	public static final ReadMode DEFAULT = valueOf(System.getProperty("pa2.cat.read", "auto").toUpperCase(Locale.ROOT));
+
+	/**
+	 * smallest file {@link #AUTO} maps, below this setting up the mapping costs
+	 * more than copying the file, can be set with the pa2.cat.mapThreshold system
+	 * property using the byte syntax of {@link PipeCapacity#parse(String)}
+	 */
+	public static final long MAP_THRESHOLD = PipeCapacity.parse(System.getProperty("pa2.cat.mapThreshold", "1MB"))
+			.getLimit();
+
+	/**
+	 * number of bytes mapped at once, a single mapping cannot be larger than 2GB so
+	 * larger files are mapped window by window, can be set with the
+	 * pa2.cat.mapWindow system property using the byte syntax of
+	 * {@link PipeCapacity#parse(String)}. Never less than a page, since every
+	 * window is a separate mapping that lives until it is garbage collected
+	 */
+	public static final int MAP_WINDOW = (int) Math.max(4096, Math.min(Integer.MAX_VALUE,
+			PipeCapacity.parse(System.getProperty("pa2.cat.mapWindow", "256MB")).getLimit()));
+
+	/**
+	 * smallest file {@link #AUTO} reads in parallel, can be set with the
+	 * pa2.cat.parallelThreshold system property using the byte syntax of
+	 * {@link PipeCapacity#parse(String)}
+	 */
+	public static final long PARALLEL_THRESHOLD = PipeCapacity
+			.parse(System.getProperty("pa2.cat.parallelThreshold", "64MB")).getLimit();
+
+	/**
+	 * number of threads that read chunks in parallel, can be set with the
+	 * pa2.cat.readers system property, defaults to the number of cores
+	 */
+	public static final int READERS = Math.max(1,
+			Integer.getInteger("pa2.cat.readers", Runtime.getRuntime().availableProcessors()));
+
+	/**
+	 * number of bytes in each chunk read in parallel, can be set with the
+	 * pa2.cat.chunkSize system property using the byte syntax of
+	 * {@link PipeCapacity#parse(String)}
+	 */
+	public static final int CHUNK_SIZE = (int) Math.max(4096, Math.min(Integer.MAX_VALUE,
+			PipeCapacity.parse(System.getProperty("pa2.cat.chunkSize", "8MB")).getLimit()));
+
+	/**
+	 * when cat reads several files, each file is opened on a reader thread while
+	 * the one before it is still being read, and a file no larger than this is
+	 * read into memory in full there too, can be set with the pa2.cat.prefetch
+	 * system property using the byte syntax of {@link PipeCapacity#parse(String)}
+	 */
+	public static final int PREFETCH_LIMIT = (int) Math.min(Integer.MAX_VALUE,
+			PipeCapacity.parse(System.getProperty("pa2.cat.prefetch", "1MB")).getLimit());
+
+	/**
+	 * size of each read-ahead buffer in {@link #ASYNC} mode, can be set with the
+	 * pa2.cat.readAheadSize system property using the byte syntax of
+	 * {@link PipeCapacity#parse(String)}
+	 */
+	public static final int READ_AHEAD_SIZE = (int) Math.max(4096, Math.min(Integer.MAX_VALUE,
+			PipeCapacity.parse(System.getProperty("pa2.cat.readAheadSize", "1MB")).getLimit()));
+
+	/**
+	 * number of read-ahead buffers in {@link #ASYNC} mode, at least 2 so one can
+	 * be read into while another is split, can be set with the
+	 * pa2.cat.readAheadDepth system property
+	 */
+	public static final int READ_AHEAD_DEPTH = Math.max(2, Integer.getInteger("pa2.cat.readAheadDepth", 2));
+
+	/**
+	 * @param size size of the file in bytes
+	 * @return true if a file of this size should be read in chunks on several
+	 *         threads
+	 */
+	boolean isParallel(long size) {
+		return this == PARALLEL || (this == AUTO && READERS > 1 && size >= PARALLEL_THRESHOLD);
+	}
+
+	/**
+	 * @param size size of the file in bytes
+	 * @return true if a file of this size should be memory-mapped
+	 */
+	boolean maps(long size) {
+		return this == MAPPED || (this == AUTO && size >= MAP_THRESHOLD);
+	}
+}
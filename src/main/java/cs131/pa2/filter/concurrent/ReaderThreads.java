@@ -0,0 +1,40 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The threads {@link CatFilter} reads files on ahead of its own thread, shared
+ * by every command: {@link ReadMode#READERS} daemon threads named
+ * "cat-reader-N", started the first time they are needed.
+ *
+ * @author cs131a
+ *
+ */
+final class ReaderThreads {
+
+	/**
+	 * the threads, null until first used
+	 */
+	private static ExecutorService pool;
+
+	private ReaderThreads() {
+	}
+
+	/**
+	 * @return the reader threads, started on first use
+	 */
+	static synchronized ExecutorService get() {
+		if (pool == null) {
+			AtomicInteger count = new AtomicInteger();
+			pool = Executors.newFixedThreadPool(ReadMode.READERS, r -> {
+				Thread t = new Thread(r, "cat-reader-" + count.incrementAndGet());
+				// idle readers must not keep the shell from exiting
+				t.setDaemon(true);
+				return t;
+			});
+		}
+		return pool;
+	}
+}
@@ -1,5 +1,6 @@
 package cs131.pa2.filter.concurrent;
 
+import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
@@ -73,13 +74,18 @@ public class RedirectFilter extends ConcurrentFilter {
 	@Override
 	public void process() throws InterruptedException {
 		try {
-			appendStream = new PrintStream(new FileOutputStream(dest, true));
-			super.process();
-			appendStream.close();
-			output.put(PoisonPill); //added output.put(PoisonPull)
+			// buffer the file so lines are not written to it one system call at a time
+			appendStream = new PrintStream(new BufferedOutputStream(new FileOutputStream(dest, true), 1 << 16));
 		} catch (FileNotFoundException e) {
 			// do nothing we know file exists
-		} 
+			return;
+		}
+		// close the file even if the input failed or we were killed part way through
+		try {
+			super.process();
+		} finally {
+			appendStream.close();
+		}
 
 	}
 
@@ -94,6 +100,24 @@ public class RedirectFilter extends ConcurrentFilter {
 		return null;
 	}
 
+	/**
+	 * Overrides {@link ConcurrentFilter#processBytes(byte[], int, int)} to write a
+	 * byte line to the destination file without decoding it.
+	 */
+	@Override
+	protected Boolean processBytes(byte[] data, int off, int len) {
+		appendStream.write(data, off, len);
+		appendStream.println();
+		return false;
+	}
+
+	/**
+	 * @return path of the destination file
+	 */
+	String getDestination() {
+		return dest;
+	}
+
 	/**
 	 * Overrides SequentialFilter.setPrevFilter() to not allow a {@link Filter} to
 	 * be placed after {@link RedirectFilter} objects.
@@ -0,0 +1,197 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Lock-free single-producer/single-consumer {@link BatchQueue} built on a
+ * preallocated array. The producer only writes {@link #tail} and the consumer
+ * only writes {@link #head}, so handing over a batch takes no locks and
+ * allocates nothing. Each side keeps a cached copy of the other side's
+ * position and only re-reads it when the cached copy says the ring is full or
+ * empty.
+ *
+ * A thread that has to wait does so according to its {@link WaitStrategy}. A
+ * consumer that is about to park registers itself so the producer can wake it
+ * as soon as it publishes a batch, and the same is done for a producer waiting
+ * on a full ring.
+ *
+ * @author cs131a
+ *
+ */
+class RingBatchQueue implements BatchQueue {
+
+	/**
+	 * default number of slots, can be set with the pa2.pipe.ringSlots system
+	 * property and is rounded up to a power of two
+	 */
+	static final int DEFAULT_SLOTS = Integer.getInteger("pa2.pipe.ringSlots", 1024);
+
+	/**
+	 * the slots, length is a power of two
+	 */
+	private final LineBatch[] ring;
+
+	/**
+	 * ring.length - 1, used instead of % to find a slot
+	 */
+	private final int mask;
+
+	/**
+	 * how both sides wait
+	 */
+	private final WaitStrategy waitStrategy;
+
+	/**
+	 * position of the next batch the consumer will take - written by consumer
+	 */
+	private final Sequence head = new Sequence();
+
+	/**
+	 * position of the next slot the producer will fill - written by producer
+	 */
+	private final Sequence tail = new Sequence();
+
+	/**
+	 * producer's cached copy of head
+	 */
+	private long cachedHead;
+
+	/**
+	 * consumer's cached copy of tail
+	 */
+	private long cachedTail;
+
+	/**
+	 * the consumer thread if it is parked waiting for a batch, else null
+	 */
+	private volatile Thread parkedConsumer;
+
+	/**
+	 * the producer thread if it is parked waiting for a free slot, else null
+	 */
+	private volatile Thread parkedProducer;
+
+	/**
+	 * Constructs a ring with the default number of slots and wait strategy.
+	 */
+	RingBatchQueue() {
+		this(DEFAULT_SLOTS, WaitStrategy.DEFAULT);
+	}
+
+	/**
+	 * Constructs a ring.
+	 *
+	 * @param slots        minimum number of slots, rounded up to a power of two
+	 * @param waitStrategy how both sides wait
+	 */
+	RingBatchQueue(int slots, WaitStrategy waitStrategy) {
+		int size = Integer.highestOneBit(Math.max(2, slots) - 1) << 1;
+		ring = new LineBatch[size];
+		mask = size - 1;
+		this.waitStrategy = waitStrategy;
+	}
+
+	@Override
+	public void put(LineBatch batch) throws InterruptedException {
+		long t = tail.get();
+
+		// only look at the consumer's real position once our cached copy says the
+		// ring is full
+		if (t - cachedHead >= ring.length) {
+			int attempt = 0;
+			while (t - (cachedHead = head.get()) >= ring.length) {
+				if (waitStrategy.willPark(attempt)) {
+					parkedProducer = Thread.currentThread();
+					if (t - head.get() < ring.length) {
+						parkedProducer = null;
+						continue;
+					}
+				}
+				waitStrategy.idle(attempt++);
+			}
+			parkedProducer = null;
+		}
+		ring[(int) t & mask] = batch;
+		// a volatile write, so the check for a parked consumer below cannot be
+		// reordered before it (see Sequence.set)
+		tail.set(t + 1);
+		Thread consumer = parkedConsumer;
+		if (consumer != null) {
+			LockSupport.unpark(consumer);
+		}
+	}
+
+	@Override
+	public LineBatch take() throws InterruptedException {
+		long h = head.get();
+		if (h >= cachedTail) {
+			int attempt = 0;
+			while (h >= (cachedTail = tail.get())) {
+				if (waitStrategy.willPark(attempt)) {
+					parkedConsumer = Thread.currentThread();
+					// re-check after registering so a batch published in between is not missed
+					if (h < tail.get()) {
+						parkedConsumer = null;
+						continue;
+					}
+				}
+				waitStrategy.idle(attempt++);
+			}
+			parkedConsumer = null;
+		}
+		return remove(h);
+	}
+
+	@Override
+	public LineBatch poll() {
+		long h = head.get();
+		if (h >= cachedTail && h >= (cachedTail = tail.get())) {
+			return null;
+		}
+		return remove(h);
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return head.get() >= tail.get();
+	}
+
+	@Override
+	public void clear() {
+		long t = tail.get();
+		for (long h = head.get(); h < t; h++) {
+			ring[(int) h & mask] = null;
+		}
+		advanceHead(t);
+	}
+
+	/**
+	 * Removes the batch at position h, which the caller has checked is filled.
+	 *
+	 * @param h current head position
+	 * @return the batch that was at h
+	 */
+	private LineBatch remove(long h) {
+		int slot = (int) h & mask;
+		LineBatch batch = ring[slot];
+		ring[slot] = null;
+		advanceHead(h + 1);
+		return batch;
+	}
+
+	/**
+	 * Publishes a new head position and wakes the producer if it is parked
+	 * waiting for a free slot.
+	 *
+	 * @param h the new head position
+	 */
+	private void advanceHead(long h) {
+		// a volatile write, so the check for a parked producer below cannot be
+		// reordered before it (see Sequence.set)
+		head.set(h);
+		Thread producer = parkedProducer;
+		if (producer != null) {
+			LockSupport.unpark(producer);
+		}
+	}
+}
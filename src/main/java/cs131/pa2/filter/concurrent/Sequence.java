@@ -0,0 +1,50 @@
+package cs131.pa2.filter.concurrent;
+
+/**
+ * A counter that only ever increases, padded on both sides so that two
+ * sequences written by different threads never share a cache line. Used for
+ * the head and tail positions of a {@link RingBatchQueue}.
+ *
+ * @author cs131a
+ *
+ */
+class Sequence {
+
+	/**
+	 * padding in front of value
+	 */
+	long p1, p2, p3, p4, p5, p6, p7;
+
+	/**
+	 * the current value
+	 */
+	private volatile long value;
+
+	/**
+	 * padding behind value
+	 */
+	long p9, p10, p11, p12, p13, p14, p15;
+
+	/**
+	 * @return the current value
+	 */
+	long get() {
+		return value;
+	}
+
+	/**
+	 * Publishes a new value. Every write made before this call is visible to a
+	 * thread that sees the new value. Only the owning thread may call this.
+	 *
+	 * This is a full volatile write rather than an ordered lazySet: the caller
+	 * reads the other side's parked-thread field right after it, and only a
+	 * volatile write keeps that read from moving ahead of the write. Otherwise
+	 * the writer could miss a thread that registered just before the new value
+	 * became visible, and that thread would sleep until its park timed out.
+	 *
+	 * @param newValue the new value
+	 */
+	void set(long newValue) {
+		value = newValue;
+	}
+}
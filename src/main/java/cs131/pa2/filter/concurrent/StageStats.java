@@ -0,0 +1,195 @@
+package cs131.pa2.filter.concurrent;
+
+/**
+ * A snapshot of what one stage of a pipeline has done so far: the lines and
+ * bytes it read and wrote, and how its time split between working, waiting for
+ * input and waiting for room in its output. The counts come from the pipes on
+ * either side of the stage, which update them once per batch, so keeping them
+ * costs next to nothing. Taken with {@link ConcurrentFilter#getStats()}.
+ *
+ * @author cs131a
+ *
+ */
+public final class StageStats {
+
+	/**
+	 * name of the filter
+	 */
+	private final String name;
+
+	/**
+	 * what else the stage does, see {@link ConcurrentFilter#getStageNote()}, or
+	 * null
+	 */
+	private final String note;
+
+	/**
+	 * true if the stage was still running when the snapshot was taken
+	 */
+	private final boolean running;
+
+	/**
+	 * lines and estimated bytes read from the input pipe
+	 */
+	private final long linesIn, bytesIn;
+
+	/**
+	 * lines and estimated bytes written to the output pipe
+	 */
+	private final long linesOut, bytesOut;
+
+	/**
+	 * milliseconds spent working, waiting for input and waiting for output
+	 * capacity
+	 */
+	private final long busyMillis, inputWaitMillis, outputWaitMillis;
+
+	/**
+	 * average amount in flight in the output pipe
+	 */
+	private final double averageDepth;
+
+	/**
+	 * largest amount seen in flight in the output pipe
+	 */
+	private final long maxDepth;
+
+	/**
+	 * capacity of the output pipe, which also gives the unit of the depths, null
+	 * if the stage has no output pipe
+	 */
+	private final PipeCapacity capacity;
+
+	/**
+	 * Takes a snapshot of a stage.
+	 *
+	 * @param filter    the filter running the stage
+	 * @param input     the stage's input pipe, or null
+	 * @param output    the stage's output pipe, or null
+	 * @param runMillis milliseconds the stage has been running, 0 if it has not
+	 *                  started
+	 * @param running   true if the stage has not finished
+	 */
+	StageStats(ConcurrentFilter filter, Pipe input, Pipe output, long runMillis, boolean running) {
+		name = filter.toString();
+		note = filter.getStageNote();
+		this.running = running;
+		linesIn = input == null ? 0 : input.getLinesRead();
+		bytesIn = input == null ? 0 : input.getBytesRead();
+		inputWaitMillis = input == null ? 0 : input.getWaitMillis();
+		linesOut = output == null ? 0 : output.getLinesWritten();
+		bytesOut = output == null ? 0 : output.getBytesWritten();
+		outputWaitMillis = output == null ? 0 : output.getStallMillis();
+		averageDepth = output == null ? 0 : output.getAverageDepth();
+		maxDepth = output == null ? 0 : output.getMaxDepth();
+		capacity = output == null ? null : output.getCapacity();
+		busyMillis = Math.max(0, runMillis - inputWaitMillis - outputWaitMillis);
+	}
+
+	/**
+	 * @return name of the filter
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * @return what else the stage does, such as a grep pushed down into it, or
+	 *         null
+	 */
+	public String getNote() {
+		return note;
+	}
+
+	/**
+	 * @return true if the stage was still running when the snapshot was taken
+	 */
+	public boolean isRunning() {
+		return running;
+	}
+
+	/**
+	 * @return number of lines read from the input pipe
+	 */
+	public long getLinesIn() {
+		return linesIn;
+	}
+
+	/**
+	 * @return estimated number of bytes read from the input pipe
+	 */
+	public long getBytesIn() {
+		return bytesIn;
+	}
+
+	/**
+	 * @return number of lines written to the output pipe
+	 */
+	public long getLinesOut() {
+		return linesOut;
+	}
+
+	/**
+	 * @return estimated number of bytes written to the output pipe
+	 */
+	public long getBytesOut() {
+		return bytesOut;
+	}
+
+	/**
+	 * @return milliseconds spent neither waiting for input nor for output capacity
+	 */
+	public long getBusyMillis() {
+		return busyMillis;
+	}
+
+	/**
+	 * @return milliseconds spent waiting for input
+	 */
+	public long getInputWaitMillis() {
+		return inputWaitMillis;
+	}
+
+	/**
+	 * @return milliseconds spent waiting for room in the output pipe
+	 */
+	public long getOutputWaitMillis() {
+		return outputWaitMillis;
+	}
+
+	/**
+	 * @return average number of lines or bytes in flight in the output pipe
+	 */
+	public double getAverageDepth() {
+		return averageDepth;
+	}
+
+	/**
+	 * @return largest number of lines or bytes in flight in the output pipe
+	 */
+	public long getMaxDepth() {
+		return maxDepth;
+	}
+
+	/**
+	 * @return the stats on one line, for example "GrepFilter: 1000 lines (48000B)
+	 *         in, 10 lines (480B) out, busy 3ms, waited 12ms for input, 0ms for
+	 *         output, queue avg 5.0 max 10 of 16777216B"
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder(name);
+		if (note != null) {
+			sb.append(" [").append(note).append("]");
+		}
+		sb.append(running ? " (running)" : "").append(": ");
+		sb.append(linesIn).append(" lines (").append(bytesIn).append("B) in, ");
+		sb.append(linesOut).append(" lines (").append(bytesOut).append("B) out, ");
+		sb.append("busy ").append(busyMillis).append("ms, waited ").append(inputWaitMillis)
+				.append("ms for input, ").append(outputWaitMillis).append("ms for output");
+		if (capacity != null) {
+			sb.append(String.format(", queue avg %.1f max %d of %s", averageDepth, maxDepth, capacity));
+		}
+		return sb.toString();
+	}
+}
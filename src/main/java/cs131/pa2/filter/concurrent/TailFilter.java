@@ -37,13 +37,13 @@ public class TailFilter extends ConcurrentFilter {
 	@Override
 	public void process() throws InterruptedException {
 
-		// until the input is empty, add line to end of buffer if buffer reached LIMIT,
+		// until the input ends, add line to end of buffer if buffer reached LIMIT,
 		// remove the head (LinkedList makes this O(1)), could also use Queue/Deque
 		// removing the head removes the oldest line seen so far - this way buf will
 		// hold the last 10 lines of the input (or as many lines were in the input if
 		// the input had < 10 lines)
-		while (!input.isEmpty()) {
-			String line = input.poll();
+		String line;
+		while ((line = readLine()) != null) {
 			buf.add(line);
 			if (buf.size() > LIMIT) {
 				buf.remove(0);
@@ -55,8 +55,6 @@ public class TailFilter extends ConcurrentFilter {
 		while (!buf.isEmpty()) {
 			output.put(buf.remove(0));
 		}
-		
-		output.put(PoisonPill); //added output.put(PoisonPill);
 	}
 
 	/**
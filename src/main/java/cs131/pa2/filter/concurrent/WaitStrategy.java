@@ -0,0 +1,93 @@
+package cs131.pa2.filter.concurrent;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * How a thread waits on a {@link RingBatchQueue} that is empty (consumer) or
+ * full (producer). Each strategy first spins, since the other side usually
+ * catches up within a few hundred nanoseconds, and then backs off further the
+ * longer the wait lasts. Set with the pa2.pipe.wait system property.
+ *
+ * @author cs131a
+ *
+ */
+public enum WaitStrategy {
+	/**
+	 * only ever spins - lowest latency, but keeps a core busy while waiting
+	 */
+	SPIN(Integer.MAX_VALUE, Integer.MAX_VALUE),
+	/**
+	 * spins, then yields the processor between checks
+	 */
+	YIELD(100, Integer.MAX_VALUE),
+	/**
+	 * spins, then yields, then parks the thread until the other side signals it
+	 */
+	PARK(100, 200);
+
+	/**
+	 * the strategy used when none is specified
+	 */
+	public static final WaitStrategy DEFAULT = valueOf(
+			System.getProperty("pa2.pipe.wait", "park").toUpperCase(Locale.ROOT));
+
+	/**
+	 * longest a parked thread sleeps before checking again, only a safety net
+	 * since the other side unparks it as soon as it publishes
+	 */
+	private static final long MAX_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+	/**
+	 * number of attempts spent spinning before yielding
+	 */
+	private final int spinLimit;
+
+	/**
+	 * number of attempts after which the thread parks instead of yielding
+	 */
+	private final int yieldLimit;
+
+	/**
+	 * Constructs a wait strategy.
+	 *
+	 * @param spinLimit  attempts spent spinning
+	 * @param yieldLimit attempts after which the thread parks
+	 */
+	private WaitStrategy(int spinLimit, int yieldLimit) {
+		this.spinLimit = spinLimit;
+		this.yieldLimit = yieldLimit;
+	}
+
+	/**
+	 * Waits once, how long depends on how many times the caller has already
+	 * waited for the same condition.
+	 *
+	 * @param attempt number of times the caller has already waited
+	 * @throws InterruptedException if the thread has been interrupted
+	 */
+	void idle(int attempt) throws InterruptedException {
+		if (attempt >= yieldLimit) {
+			LockSupport.parkNanos(this, MAX_PARK_NANOS);
+		} else if (attempt >= spinLimit) {
+			Thread.yield();
+		} else {
+			// tells the processor this is a busy-wait, so it can save power and let a
+			// sibling hyperthread run
+			Thread.onSpinWait();
+		}
+		if (Thread.interrupted()) {
+			throw new InterruptedException();
+		}
+	}
+
+	/**
+	 * @param attempt number of times the caller has already waited
+	 * @return true if the next {@link #idle(int)} would park, so the caller must
+	 *         register itself to be woken up
+	 */
+	boolean willPark(int attempt) {
+		return attempt >= yieldLimit;
+	}
+}
@@ -41,12 +41,11 @@ public class WordCountFilter extends ConcurrentFilter {
 	 */
 	@Override
 	public void process() throws InterruptedException {
-		while (!input.isEmpty()) {
-			String line = input.poll();
+		String line;
+		while ((line = readLine()) != null) {
 			processLine(line);
 		}
 		output.put(lineCount + " " + wordCount + " " + charCount);
-		output.put(PoisonPill);
 	}
 
 	/**
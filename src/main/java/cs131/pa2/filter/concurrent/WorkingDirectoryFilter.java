@@ -33,7 +33,6 @@ public class WorkingDirectoryFilter extends ConcurrentFilter {
 	@Override
 	public void process() throws InterruptedException {
 		this.output.put(ConcurrentREPL.currentWorkingDirectory);
-		output.put(PoisonPill); //output.put(PoisonPill)
 	}
 
 	/**
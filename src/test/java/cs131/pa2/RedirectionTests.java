@@ -8,7 +8,10 @@ import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.IOException;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.HashSet;
 import java.util.Scanner;
 import java.util.Set;
@@ -71,6 +74,43 @@ public class RedirectionTests {
 		AllConcurrentTests.destroyFile("dir1/folder-contents.txt");
 	}
 	
+	@Test
+	public void testCatRedirectedExactBytes() throws IOException {
+		// the first file is copied as it is, the second has its terminators rewritten
+		Files.write(Paths.get("mixed-endings.txt"), "a\r\nb\rc".getBytes());
+		testInput("cat hello-world.txt mixed-endings.txt > copied.txt\nexit");
+		ConcurrentREPL.main(null);
+		assertEquals("hello\nworld\na\nb\nc\n", new String(Files.readAllBytes(Paths.get("copied.txt"))));
+		assertOutput(Message.NEWCOMMAND.toString());
+		AllConcurrentTests.destroyFile("mixed-endings.txt");
+		AllConcurrentTests.destroyFile("copied.txt");
+	}
+	
+	@Test
+	public void testCatRedirectedLateCarriageReturn() throws IOException {
+		// the copy switches to lines in the middle of a line it has already started
+		String head = "plain line\n".repeat(1000) + "half";
+		Files.write(Paths.get("late-endings.txt"), (head + "\r\nb\rc").getBytes());
+		testInput("cat late-endings.txt > copied.txt\nexit");
+		ConcurrentREPL.main(null);
+		assertEquals(head + "\nb\nc\n", new String(Files.readAllBytes(Paths.get("copied.txt"))));
+		assertOutput(Message.NEWCOMMAND.toString());
+		AllConcurrentTests.destroyFile("late-endings.txt");
+		AllConcurrentTests.destroyFile("copied.txt");
+	}
+	
+	@Test
+	public void testCatRedirectedTextLikeZlibHeader() throws IOException {
+		// "x^" is the header zlib writes at its fastest level, the copy must not inflate
+		Files.write(Paths.get("formula.txt"), "x^2 + y^2\n".getBytes());
+		testInput("cat formula.txt > copied.txt\nexit");
+		ConcurrentREPL.main(null);
+		assertEquals("x^2 + y^2\n", new String(Files.readAllBytes(Paths.get("copied.txt"))));
+		assertOutput(Message.NEWCOMMAND.toString());
+		AllConcurrentTests.destroyFile("formula.txt");
+		AllConcurrentTests.destroyFile("copied.txt");
+	}
+	
 	private static void assertFileContentsEquals(String fileName, String expected){
 		File f = new File(fileName);
 		try {
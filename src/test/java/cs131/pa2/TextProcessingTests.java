@@ -5,7 +5,14 @@ import cs131.pa2.filter.concurrent.ConcurrentREPL;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
 
 import org.junit.After;
 import org.junit.Before;
@@ -68,6 +75,50 @@ public class TextProcessingTests {
 		assertOutput(Message.NEWCOMMAND + "-\n");
 	}
 
+	@Test
+	public void testGrepRegex() {
+		// an escaped dot is searched for as a string, an unclosed group is an error
+		testInput("cat fizz-buzz-10000.txt | grep -E ^11+$\ncat ascii.txt | grep -E \\.\n"
+				+ "cat ascii.txt | grep -E (\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "11\n1111\n" + Message.NEWCOMMAND + ".\n" + Message.NEWCOMMAND
+				+ Message.COMMAND_NOT_FOUND.with_parameter("grep -E ("));
+	}
+
+	@Test
+	public void testGrepMultiplePatterns() throws IOException {
+		Files.write(Paths.get("patterns.txt"), "77\n\n88\n".getBytes());
+		try {
+			testInput("cat fizz-buzz-100.txt | grep -f patterns.txt -e 98\n"
+					+ "cat fizz-buzz-100.txt | grep -E -e ^7 -e 9$\nexit");
+			ConcurrentREPL.main(null);
+			assertOutput(Message.NEWCOMMAND + "77\n88\n98\n" + Message.NEWCOMMAND
+					+ "7\n19\n29\n49\n59\n71\n73\n74\n76\n77\n79\n89\n");
+		} finally {
+			AllConcurrentTests.destroyFile("patterns.txt");
+		}
+	}
+
+	@Test
+	public void testGrepPushedIntoCatStopsEarly() {
+		// the grep runs inside the cat, which still stops once head has its lines
+		testInput("cat fizz-buzz-1500000.txt | grep 7 | head\ncat fizz-buzz-100.txt | grep 1 | grep -E 9$\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "7\n17\n37\n47\n67\n71\n73\n74\n76\n77\n" + Message.NEWCOMMAND
+				+ "19\n");
+	}
+
+	@Test
+	public void testGrepCountAndExists() {
+		testInput("cat fizz-buzz-10000.txt | grep -c 111\ncat fizz-buzz-100.txt | grep -E -c ^7\n"
+				+ "cat fizz-buzz-1500000.txt | grep -q 1499998\ncat fizz-buzz-100.txt | grep -q 999\n"
+				+ "grep -c 1\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "10\n" + Message.NEWCOMMAND + "7\n" + Message.NEWCOMMAND + "true\n"
+				+ Message.NEWCOMMAND + "false\n" + Message.NEWCOMMAND
+				+ Message.REQUIRES_INPUT.with_parameter("grep -c 1"));
+	}
+
 	// Basic test for wc (word count)
 
 	@Test
@@ -224,6 +275,94 @@ public class TextProcessingTests {
 		assertOutput(Message.NEWCOMMAND + "Pi\nis\n3\n.\n1\n4\n5\n9\n2\n6\n");
 	}
 
+	// Tests for chains of line-by-line filters, which run fused into one stage
+	@Test
+	public void testGrepGrepUniq() {
+		testInput("cat fizz-buzz-100.txt | grep 1 | grep 9 | uniq\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "19\n91\n");
+	}
+
+	@Test
+	public void testFusedChainBeforeTail() {
+		testInput("cat fizz-buzz-100.txt | grep Fizz | uniq | tail\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "FizzBuzz\nFizz\n");
+	}
+
+	// Tests for cat with several files or a glob, which keep the order given
+	@Test
+	public void testCatMultipleFiles() {
+		testInput("cat hello-world.txt fizz-buzz-9.txt hello-world.txt | wc\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "14 14 49\n");
+	}
+
+	@Test
+	public void testCatGlob() {
+		testInput("cat fizz-buzz-1?.txt hello-*.txt\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "FizzBuzz\n1\n2\nFizz\n4\nBuzz\nFizz\n7\n8\nFizz\nBuzz\nhello\nworld\n");
+	}
+
+	@Test
+	public void testCatCompressed() throws IOException {
+		// the first file is only recognized by its gzip header, the second by its name
+		try (OutputStream out = new GZIPOutputStream(new FileOutputStream("hello-world.gz"))) {
+			out.write("hello\nworld".getBytes());
+		}
+		try (OutputStream out = new DeflaterOutputStream(new FileOutputStream("fizz-buzz-9.zz"))) {
+			out.write(Files.readAllBytes(Paths.get("fizz-buzz-9.txt")));
+		}
+		try {
+			testInput("cat hello-world.gz fizz-buzz-9.zz\nexit");
+			ConcurrentREPL.main(null);
+			assertOutput(Message.NEWCOMMAND + "hello\nworld\nFizzBuzz\n1\n2\nFizz\n4\nBuzz\nFizz\n7\n8\nFizz\n");
+		} finally {
+			AllConcurrentTests.destroyFile("hello-world.gz");
+			AllConcurrentTests.destroyFile("fizz-buzz-9.zz");
+		}
+	}
+
+	@Test
+	public void testCatTextLikeZlibHeader() throws IOException {
+		// "x^" is the header zlib writes at its fastest level
+		Files.write(Paths.get("formula.txt"), "x^2 + y^2\n= z^2\n".getBytes());
+		try {
+			testInput("cat formula.txt\nexit");
+			ConcurrentREPL.main(null);
+			assertOutput(Message.NEWCOMMAND + "x^2 + y^2\n= z^2\n");
+		} finally {
+			AllConcurrentTests.destroyFile("formula.txt");
+		}
+	}
+
+	@Test
+	public void testCatSeesChangedFile() {
+		// the first cat caches the file, the second must notice it was rewritten
+		testInput("cat hello-world.txt > cached.txt\ncat cached.txt\ncat fizz-buzz-9.txt > cached.txt\ncat cached.txt | wc\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND.toString() + Message.NEWCOMMAND.toString() + "hello\nworld\n"
+				+ Message.NEWCOMMAND.toString() + Message.NEWCOMMAND.toString() + "10 10 29\n");
+		AllConcurrentTests.destroyFile("cached.txt");
+	}
+
+	@Test(timeout = 10000)
+	public void testCatFollowStopsWithPipeline() {
+		// head stops reading after 10 lines, which must end the follow as well
+		testInput("cat -f fizz-buzz-100.txt | head\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "FizzBuzz\n1\n2\nFizz\n4\nBuzz\nFizz\n7\n8\nFizz\n");
+	}
+
+	@Test
+	public void testCatRanges() {
+		// byte ranges take the lines that start in them, then lines 8 to the end
+		testInput("cat fizz-buzz-9.txt@0+10 fizz-buzz-9.txt@10+5 fizz-buzz-9.txt#8-\nexit");
+		ConcurrentREPL.main(null);
+		assertOutput(Message.NEWCOMMAND + "FizzBuzz\n1\n2\nFizz\n7\n8\nFizz\n");
+	}
+
 	// Boilerplate, standard across test case files.
 
 	private ByteArrayInputStream inContent;
@@ -0,0 +1,66 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class AhoCorasickTests {
+
+	@Test
+	public void testOverlappingPatterns() {
+		// the classic example, where each match is only found through a fallback
+		AhoCorasick matcher = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+		assertTrue(matcher.matches("ushers"));
+		assertTrue(matcher.matches("ahishers"));
+		assertTrue(matcher.matches("sh he"));
+		assertFalse(matcher.matches("shi s hs"));
+		assertFalse(matcher.matches(""));
+	}
+
+	@Test
+	public void testNoPatternsMatchNothing() {
+		AhoCorasick matcher = new AhoCorasick(new ArrayList<String>());
+		assertFalse(matcher.matches("anything"));
+		assertTrue(new AhoCorasick(Arrays.asList("x", "")).matches("anything"));
+	}
+
+	@Test
+	public void testAgreesWithContains() {
+		// two, three and four byte characters, and a lone surrogate
+		Random random = new Random(131);
+		String alphabet = "abcab\u00e9\u20ac\ud83d\ude00\ud800";
+		for (int trial = 0; trial < 3000; trial++) {
+			List<String> patterns = new ArrayList<String>();
+			int count = 1 + random.nextInt(6);
+			for (int i = 0; i < count; i++) {
+				patterns.add(randomString(random, alphabet, 1 + random.nextInt(5)));
+			}
+			String line = randomString(random, alphabet, random.nextInt(40));
+			boolean expected = false;
+			for (String pattern : patterns) {
+				expected |= new String(line.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8)
+						.contains(new String(pattern.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8));
+			}
+			AhoCorasick matcher = new AhoCorasick(patterns);
+			assertEquals(patterns + " in " + line, expected, matcher.matches(line));
+			byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+			assertEquals(patterns + " in " + line, expected, matcher.matches(bytes, 2, bytes.length - 4));
+		}
+	}
+
+	private static String randomString(Random random, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,112 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Runs every way {@link CatFilter} reads a file over the same text. Surefire
+ * runs this class in a JVM of its own with the {@link FileCache} turned off and
+ * windows, chunks and read-ahead blocks of a single page, so every read goes
+ * through the mode under test and lines run across their boundaries.
+ */
+public class CatReadModeTests {
+
+	private static File dir;
+
+	private static List<String> expected;
+
+	@BeforeClass
+	public static void writeFile() throws IOException {
+		dir = Files.createTempDirectory("cat-read-mode").toFile();
+		ConcurrentREPL.currentWorkingDirectory = dir.getPath();
+		// long lines, empty lines, all three terminators and no terminator at the end
+		StringBuilder sb = new StringBuilder();
+		String[] terminators = { "\n", "\r\n", "\r" };
+		for (int i = 0; i < 5000; i++) {
+			sb.append(i % 97 == 0 ? "" : i % 500 == 7 ? "x".repeat(9000 + i) : "line " + i + " café");
+			sb.append(terminators[i % 3]);
+		}
+		sb.append("last");
+		String text = sb.toString();
+		Files.write(new File(dir, "modes.txt").toPath(), text.getBytes(StandardCharsets.UTF_8));
+		expected = Arrays.asList(text.split("\r\n|\r|\n"));
+	}
+
+	@AfterClass
+	public static void deleteFile() {
+		new File(dir, "modes.txt").delete();
+		dir.delete();
+	}
+
+	@Test
+	public void testBuffered() throws InterruptedException {
+		assertEquals(expected, cat(ReadMode.BUFFERED));
+	}
+
+	@Test
+	public void testMapped() throws InterruptedException {
+		assertEquals(expected, cat(ReadMode.MAPPED));
+	}
+
+	@Test
+	public void testParallel() throws InterruptedException {
+		assertEquals(expected, cat(ReadMode.PARALLEL));
+	}
+
+	@Test
+	public void testAsync() throws InterruptedException {
+		assertEquals(expected, cat(ReadMode.ASYNC));
+	}
+
+	@Test
+	public void testAuto() throws InterruptedException {
+		assertEquals(expected, cat(ReadMode.AUTO));
+	}
+
+	@Test
+	public void testPushedDownFilter() throws InterruptedException {
+		// the lines a pushed-down grep drops never reach the pipe, however they are read
+		List<String> lines = new ArrayList<String>();
+		for (String line : expected) {
+			if (line.contains("café")) {
+				lines.add(line);
+			}
+		}
+		for (ReadMode mode : ReadMode.values()) {
+			assertEquals(mode.toString(), lines, cat(mode, new LiteralMatcher("café")));
+		}
+	}
+
+	private static List<String> cat(ReadMode mode) throws InterruptedException {
+		return cat(mode, null);
+	}
+
+	private static List<String> cat(ReadMode mode, LineMatcher filter) throws InterruptedException {
+		CatFilter cat = new CatFilter("cat modes.txt");
+		cat.setReadMode(mode);
+		cat.output = new Pipe();
+		cat.output.setFilter(filter);
+		Thread thread = new Thread(cat);
+		thread.start();
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = cat.output.take()) != null) {
+			lines.add(line);
+		}
+		thread.join();
+		assertNull(cat.output.take());
+		return lines;
+	}
+}
@@ -0,0 +1,31 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+
+import org.junit.Test;
+
+public class ExecutionModeTests {
+
+	@Test
+	public void testParseIgnoresCase() {
+		assertEquals(ExecutionMode.VIRTUAL, ExecutionMode.parse("Virtual"));
+		assertEquals(ExecutionMode.PLATFORM, ExecutionMode.parse(" platform "));
+	}
+
+	@Test
+	public void testUnknownModeFallsBackToPooled() {
+		PrintStream err = System.err;
+		ByteArrayOutputStream warning = new ByteArrayOutputStream();
+		System.setErr(new PrintStream(warning));
+		try {
+			assertEquals(ExecutionMode.POOLED, ExecutionMode.parse("green"));
+		} finally {
+			System.setErr(err);
+		}
+		assertTrue(warning.toString().contains("green"));
+	}
+}
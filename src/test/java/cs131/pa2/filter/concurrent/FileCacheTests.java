@@ -0,0 +1,79 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class FileCacheTests {
+
+	private File file;
+
+	@Before
+	public void writeFile() throws IOException {
+		FileCache.clear();
+		file = File.createTempFile("file-cache", ".txt");
+		Files.write(file.toPath(), "a\nb\r\nc".getBytes(StandardCharsets.UTF_8));
+	}
+
+	@After
+	public void deleteFile() {
+		FileCache.clear();
+		file.delete();
+	}
+
+	@Test
+	public void testCachedOnSecondMissFromStreamedBytes() throws IOException, InterruptedException {
+		BasicFileAttributes attrs = attributes();
+		// a file read once is only remembered
+		assertNull(FileCache.admit(file, attrs));
+		assertNull(FileCache.get(file, attrs));
+		FileCache.Recorder recorder = FileCache.admit(file, attrs);
+		assertNotNull(recorder);
+		drain(recorder.tee(Channels.newChannel(Files.newInputStream(file.toPath()))));
+		recorder.finish(false);
+		FileCache.Entry entry = FileCache.get(file, attrs);
+		assertNotNull(entry);
+		Pipe pipe = new Pipe();
+		entry.writeTo(pipe);
+		pipe.close();
+		assertEquals("a", pipe.take());
+		assertEquals("b", pipe.take());
+		assertEquals("c", pipe.take());
+		assertNull(pipe.take());
+	}
+
+	@Test
+	public void testPartialReadIsNotCached() throws IOException {
+		BasicFileAttributes attrs = attributes();
+		FileCache.admit(file, attrs);
+		FileCache.Recorder recorder = FileCache.admit(file, attrs);
+		recorder.record(ByteBuffer.wrap("a\n".getBytes(StandardCharsets.UTF_8)), 0, 2);
+		recorder.finish(false);
+		assertNull(FileCache.get(file, attrs));
+	}
+
+	private BasicFileAttributes attributes() throws IOException {
+		return Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+	}
+
+	private static void drain(ReadableByteChannel channel) throws IOException {
+		ByteBuffer buf = ByteBuffer.allocate(2);
+		while (channel.read(buf) >= 0) {
+			buf.clear();
+		}
+		channel.close();
+	}
+}
@@ -0,0 +1,90 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class GrepSummaryFilterTests {
+
+	private static final int LINES = 1000000;
+
+	private String workingDirectory;
+
+	private File dir;
+
+	private PipelineExecutor executor;
+
+	@Before
+	public void writeFile() throws IOException {
+		workingDirectory = ConcurrentREPL.currentWorkingDirectory;
+		dir = Files.createTempDirectory("grep-summary").toFile();
+		ConcurrentREPL.currentWorkingDirectory = dir.getPath();
+		// the only match is the first line
+		try (PrintWriter out = new PrintWriter(new File(dir, "hay.txt"), StandardCharsets.UTF_8)) {
+			out.println("needle");
+			for (int i = 1; i < LINES; i++) {
+				out.println("hay " + i);
+			}
+		}
+		executor = new PipelineExecutor(ExecutionMode.DEFAULT);
+	}
+
+	@After
+	public void deleteFile() {
+		executor.shutdown();
+		for (File file : dir.listFiles()) {
+			file.delete();
+		}
+		dir.delete();
+		ConcurrentREPL.currentWorkingDirectory = workingDirectory;
+	}
+
+	@Test
+	public void testQuietStopsReadingAtFirstMatch() throws IOException, InterruptedException {
+		assertEquals("true", run("cat hay.txt | grep -q needle > out.txt", LINES / 10));
+	}
+
+	@Test
+	public void testCountReadsEverything() throws IOException, InterruptedException {
+		assertEquals("1", run("cat hay.txt | grep -c needle > out.txt", LINES));
+	}
+
+	/**
+	 * Runs a command with small pipes, counting the lines its cat reads whether or
+	 * not the grep was pushed down into it.
+	 */
+	private String run(String command, long maxRead) throws IOException, InterruptedException {
+		List<ConcurrentFilter> filters = ConcurrentCommandBuilder.createFiltersFromCommand(command,
+				PipeCapacity.lines(1024));
+		CatFilter cat = (CatFilter) filters.get(0);
+		LineMatcher pushedDown = cat.output.getFilter();
+		AtomicLong read = new AtomicLong();
+		cat.output.setFilter(new LineMatcher() {
+			@Override
+			public boolean matches(String line) {
+				read.incrementAndGet();
+				return pushedDown == null || pushedDown.matches(line);
+			}
+
+			@Override
+			public boolean matches(byte[] data, int off, int len) {
+				read.incrementAndGet();
+				return pushedDown == null || pushedDown.matches(data, off, len);
+			}
+		});
+		executor.start(filters, command).join();
+		assertTrue(read.get() + " lines read", read.get() <= maxRead);
+		return new String(Files.readAllBytes(new File(dir, "out.txt").toPath()), StandardCharsets.UTF_8).trim();
+	}
+}
@@ -0,0 +1,84 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public class LineReaderTests {
+
+	@Test
+	public void testTerminatorsAcrossBufferBoundaries() throws IOException {
+		String text = "first line that is longer than the buffer\r\nb\rc\n\nd\r\r\nlast";
+		List<String> expected = Arrays.asList("first line that is longer than the buffer", "b", "c", "", "d", "",
+				"last");
+		// every buffer boundary lands somewhere different in the text
+		for (int size = 16; size < 24; size++) {
+			assertEquals(expected, readAll(new LineReader(
+					Channels.newChannel(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8))),
+					StandardCharsets.UTF_8, size)));
+		}
+	}
+
+	@Test
+	public void testTrailingTerminatorAddsNoLine() throws IOException {
+		assertEquals(Arrays.asList("a", "b"), readAll(reader("a\nb\r\n")));
+		assertEquals(Arrays.asList(), readAll(reader("")));
+		assertEquals(Arrays.asList(""), readAll(reader("\r\n")));
+	}
+
+	@Test
+	public void testDecodesNonAsciiLines() throws IOException {
+		assertEquals(Arrays.asList("plain", "café ☃"), readAll(reader("plain\ncafé ☃\n")));
+	}
+
+	@Test
+	public void testBytesAreLeftUndecoded() throws IOException {
+		LineReader reader = reader("xé\n");
+		assertTrue(reader.next());
+		assertEquals(3, reader.length());
+		assertEquals((byte) 0xc3, reader.buffer()[reader.start() + 1]);
+		assertFalse(reader.next());
+	}
+
+	@Test
+	public void testReadsFileRegion() throws IOException {
+		File file = File.createTempFile("line-reader", ".txt");
+		try {
+			Files.write(file.toPath(), "skip\nkeep 1\nkeep 2\nskip\n".getBytes(StandardCharsets.UTF_8));
+			try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+				assertEquals(Arrays.asList("keep 1", "keep 2"), readAll(new LineReader(channel, 5, 19)));
+			}
+		} finally {
+			file.delete();
+		}
+	}
+
+	private static LineReader reader(String text) {
+		return new LineReader(new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8)));
+	}
+
+	private static List<String> readAll(LineReader reader) throws IOException {
+		List<String> lines = new ArrayList<String>();
+		String line;
+		while ((line = reader.readLine()) != null) {
+			lines.add(line);
+		}
+		assertNull(reader.readLine());
+		return lines;
+	}
+}
@@ -0,0 +1,52 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class LiteralMatcherTests {
+
+	@Test
+	public void testAgreesWithIndexOf() {
+		// a small alphabet makes partial matches and repeated bytes common
+		Random random = new Random(131);
+		String alphabet = "abcab\u00e9\u20ac";
+		for (int trial = 0; trial < 5000; trial++) {
+			String needle = randomString(random, alphabet, 1 + random.nextInt(12));
+			String line = randomString(random, alphabet, random.nextInt(60));
+			if (random.nextInt(4) == 0) {
+				int at = random.nextInt(line.length() + 1);
+				line = line.substring(0, at) + needle + line.substring(at);
+			}
+			LiteralMatcher matcher = new LiteralMatcher(needle);
+			assertEquals(needle + " in " + line, line.indexOf(needle), matcher.indexOf(line));
+			byte[] bytes = ("xx" + line + "yy").getBytes(StandardCharsets.UTF_8);
+			int len = bytes.length - 4;
+			boolean found = matcher.indexOf(bytes, 2, len) >= 0;
+			assertEquals(needle + " in " + line, line.contains(needle), found);
+		}
+	}
+
+	@Test
+	public void testMatchesAtEdges() {
+		LiteralMatcher matcher = new LiteralMatcher("needle in a haystack");
+		assertEquals(0, matcher.indexOf("needle in a haystack"));
+		assertEquals(3, matcher.indexOf("...needle in a haystack"));
+		assertEquals(-1, matcher.indexOf("needle in a haystac"));
+		byte[] bytes = "needle in a haystack!".getBytes(StandardCharsets.UTF_8);
+		assertEquals(0, matcher.indexOf(bytes, 0, bytes.length));
+		// the match starts before the slice
+		assertEquals(-1, matcher.indexOf(bytes, 1, bytes.length - 1));
+	}
+
+	private static String randomString(Random random, String alphabet, int length) {
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < length; i++) {
+			sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+		}
+		return sb.toString();
+	}
+}
@@ -0,0 +1,29 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+
+public class PatternCacheTests {
+
+	@Test
+	public void testLiteral() {
+		assertEquals("Fizz", PatternCache.literal("Fizz"));
+		assertEquals("1.5 (a)", PatternCache.literal("1\\.5 \\(a\\)"));
+		assertEquals("a\\b", PatternCache.literal("a\\\\b"));
+		assertNull(PatternCache.literal("Fizz|Buzz"));
+		assertNull(PatternCache.literal("1.5"));
+		// classes and back references
+		assertNull(PatternCache.literal("\\d"));
+		assertNull(PatternCache.literal("(a)\\1"));
+		assertNull(PatternCache.literal("trailing\\"));
+	}
+
+	@Test
+	public void testSamePatternIsReused() {
+		PatternCache.clear();
+		assertSame(PatternCache.get("F[iu]zz+"), PatternCache.get("F[iu]zz+"));
+	}
+}
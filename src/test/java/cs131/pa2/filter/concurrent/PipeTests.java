@@ -0,0 +1,203 @@
+package cs131.pa2.filter.concurrent;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CancellationException;
+
+import org.junit.Test;
+
+public class PipeTests {
+
+	private static final int LINES = 200000;
+
+	@Test
+	public void testQueueKeepsOrder() throws InterruptedException {
+		assertTransfersInOrder(new Pipe(256, 5, PipeCapacity.lines(4096), new LinkedBatchQueue()));
+	}
+
+	@Test
+	public void testRingSpinKeepsOrder() throws InterruptedException {
+		assertTransfersInOrder(new Pipe(256, 5, PipeCapacity.lines(4096), new RingBatchQueue(4, WaitStrategy.SPIN)));
+	}
+
+	@Test
+	public void testRingYieldKeepsOrder() throws InterruptedException {
+		assertTransfersInOrder(new Pipe(256, 5, PipeCapacity.lines(4096), new RingBatchQueue(4, WaitStrategy.YIELD)));
+	}
+
+	@Test
+	public void testRingParkKeepsOrder() throws InterruptedException {
+		assertTransfersInOrder(new Pipe(1, 5, PipeCapacity.lines(64), new RingBatchQueue(2, WaitStrategy.PARK)));
+	}
+
+	@Test
+	public void testProducerBlocksWhenFull() throws InterruptedException {
+		Pipe pipe = new Pipe(1, 0, PipeCapacity.lines(2));
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < 3; i++) {
+					pipe.put(Integer.toString(i));
+				}
+			} catch (InterruptedException e) {
+			}
+		});
+		producer.start();
+		producer.join(200);
+		assertTrue(producer.isAlive());
+		assertEquals("0", pipe.take());
+		producer.join(1000);
+		assertTrue(!producer.isAlive());
+		assertEquals(1, pipe.getStallCount());
+	}
+
+	@Test
+	public void testByteLinesAreDecodedOnDemand() throws InterruptedException {
+		Pipe pipe = new Pipe(4, 5, PipeCapacity.bytes(1024));
+		byte[] buf = "xx\u00e9t\u00e9 line".getBytes(StandardCharsets.UTF_8);
+		pipe.put(buf, 2, 5);
+		pipe.put("plain");
+		pipe.put(buf, 0, 0);
+		pipe.close();
+		assertTrue(pipe.advance());
+		assertTrue(pipe.isBytes());
+		assertEquals(5, pipe.length());
+		assertEquals("\u00e9t\u00e9", new String(pipe.data(), pipe.start(), pipe.length(), StandardCharsets.UTF_8));
+		assertEquals("\u00e9t\u00e9", pipe.line());
+		assertEquals("plain", pipe.take());
+		assertEquals("", pipe.take());
+		assertFalse(pipe.advance());
+	}
+
+	@Test
+	public void testCountsLinesAndBytes() throws InterruptedException {
+		Pipe pipe = new Pipe(2, 5, PipeCapacity.lines(16));
+		pipe.put("ab");
+		pipe.put("cde");
+		pipe.put("f");
+		pipe.close();
+		assertEquals(3, pipe.getLinesWritten());
+		assertEquals(9, pipe.getBytesWritten());
+		assertEquals("ab", pipe.take());
+		assertEquals(2, pipe.getLinesRead());
+		while (pipe.take() != null) {
+		}
+		assertEquals(3, pipe.getLinesRead());
+		assertEquals(9, pipe.getBytesRead());
+		assertEquals(2, pipe.getMaxDepth());
+	}
+
+	@Test
+	public void testTransferKeepsOrder() throws InterruptedException {
+		Pipe target = new Pipe(2, 5, PipeCapacity.lines(16));
+		target.put("a");
+		Pipe chunk = new Pipe(2, Long.MAX_VALUE, PipeCapacity.lines(16), new LinkedBatchQueue());
+		chunk.put("b");
+		chunk.put("c");
+		chunk.put("d");
+		chunk.close();
+		chunk.transferTo(target);
+		target.put("e");
+		target.close();
+		for (String expected : new String[] { "a", "b", "c", "d", "e" }) {
+			assertEquals(expected, target.take());
+		}
+		assertNull(target.take());
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testCancelReleasesProducer() throws InterruptedException {
+		Pipe pipe = new Pipe(1, 0, PipeCapacity.lines(1));
+		pipe.put("first");
+		pipe.cancel();
+		pipe.put("second");
+	}
+
+	@Test
+	public void testEndOfStream() throws InterruptedException {
+		Pipe pipe = new Pipe();
+		pipe.put("EndEndEnd");
+		pipe.put("last");
+		pipe.close();
+		assertEquals("EndEndEnd", pipe.take());
+		assertEquals("last", pipe.take());
+		assertNull(pipe.take());
+		assertTrue(pipe.isEnded());
+	}
+
+	@Test
+	public void testConsumerWaitsForSlowProducer() throws InterruptedException {
+		Pipe pipe = new Pipe();
+		Thread producer = new Thread(() -> {
+			try {
+				Thread.sleep(200);
+				pipe.put("late");
+				pipe.close();
+			} catch (InterruptedException e) {
+			}
+		});
+		producer.start();
+		assertEquals("late", pipe.take());
+		assertNull(pipe.take());
+	}
+
+	@Test
+	public void testDroppedLinesFlushStaleBatch() throws InterruptedException {
+		Pipe pipe = new Pipe(256, 1, PipeCapacity.lines(4096));
+		pipe.setFilter(new LiteralMatcher("keep"));
+		pipe.put("keep me");
+		Thread.sleep(20);
+		byte[] dropped = "drop".getBytes(StandardCharsets.UTF_8);
+		for (int i = 0; i < 1000; i++) {
+			pipe.put(dropped, 0, dropped.length);
+		}
+		// the pipe is still open, so the line is only there if a dropped line flushed it
+		assertEquals("keep me", pipe.poll());
+	}
+
+	@Test(expected = CancellationException.class)
+	public void testCancelStopsProducerDroppingLines() throws InterruptedException {
+		// nothing matches, so there is never a batch to flush and find out that way
+		Pipe pipe = new Pipe();
+		pipe.setFilter(new LiteralMatcher("keep"));
+		pipe.cancel();
+		for (int i = 0; i < 1000; i++) {
+			pipe.put("drop");
+		}
+	}
+
+	@Test
+	public void testFailureReachesConsumer() throws InterruptedException {
+		Pipe pipe = new Pipe();
+		pipe.put("partial");
+		pipe.fail(new IllegalStateException("disk on fire"));
+		assertEquals("partial", pipe.take());
+		try {
+			pipe.take();
+			assertTrue(false);
+		} catch (PipeException e) {
+			assertEquals("disk on fire", e.getMessage());
+		}
+	}
+
+	private static void assertTransfersInOrder(Pipe pipe) throws InterruptedException {
+		Thread producer = new Thread(() -> {
+			try {
+				for (int i = 0; i < LINES; i++) {
+					pipe.put(Integer.toString(i));
+				}
+				pipe.close();
+			} catch (InterruptedException e) {
+			}
+		});
+		producer.start();
+		for (int i = 0; i < LINES; i++) {
+			assertEquals(Integer.toString(i), pipe.take());
+		}
+		assertNull(pipe.take());
+		producer.join();
+	}
+}